@@ -0,0 +1,399 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.bench;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.Field;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IInstance;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IPrimitiveArray;
+import org.eclipse.mat.snapshot.model.ObjectReference;
+
+/**
+ * An in-memory heap behind a fake {@link ISnapshot}, for benchmarking
+ * inspection code without a heap dump.
+ * <p>
+ * Snapshot and model objects are dynamic proxies that only implement what the
+ * inspections use; anything else throws {@link UnsupportedOperationException}.
+ * Proxies keep working across MAT versions, at the cost of a small, constant
+ * overhead per call.
+ */
+public final class FakeHeap {
+
+	private static final long BASE_ADDRESS = 0x10000L;
+	private static final long OBJECT_SIZE = 8;
+
+	private final List<IObject> objects = new ArrayList<>();
+	private final List<ClassState> classes = new ArrayList<>();
+	private final ISnapshot snapshot;
+
+	private final IClass stringClass;
+	private final IClass byteArrayClass;
+	private final IClass charArrayClass;
+
+	public FakeHeap() {
+		snapshot = (ISnapshot) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ISnapshot.class },
+				new SnapshotHandler());
+		stringClass = defineClass("java.lang.String", null);
+		byteArrayClass = defineClass("byte[]", null);
+		charArrayClass = defineClass("char[]", null);
+	}
+
+	public ISnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public IClass defineClass(String name, IClass superClass) {
+		ClassState state = new ClassState(objects.size(), name,
+				superClass == null ? null : classes.get(indexOf(superClass)));
+		IClass clazz = (IClass) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IClass.class },
+				new ClassHandler(state));
+		state.proxy = clazz;
+		classes.add(state);
+		objects.add(clazz);
+		return clazz;
+	}
+
+	/**
+	 * @param fields field names and values: {@code IObject}s (or
+	 *               {@code null}) for references, {@code Boolean},
+	 *               {@code Integer} or {@code Long} for primitives
+	 */
+	public IObject newInstance(IClass clazz, Object... fields) {
+		List<Field> values = new ArrayList<>(fields.length / 2);
+		for (int i = 0; i < fields.length; i += 2) {
+			values.add(toField((String) fields[i], fields[i + 1]));
+		}
+		return add(clazz, new InstanceHandler(objects.size(), clazz, values, null), IInstance.class);
+	}
+
+	public IObject newString(String value) {
+		List<Field> fields = Collections.singletonList(toField("value", newCharArray(value.toCharArray())));
+		return add(stringClass, new InstanceHandler(objects.size(), stringClass, fields, value), IInstance.class);
+	}
+
+	public IObject newByteArray(byte[] values) {
+		return add(byteArrayClass, new ArrayHandler(objects.size(), byteArrayClass, values, IObject.Type.BYTE),
+				IPrimitiveArray.class);
+	}
+
+	public IObject newCharArray(char[] values) {
+		return add(charArrayClass, new ArrayHandler(objects.size(), charArrayClass, values, IObject.Type.CHAR),
+				IPrimitiveArray.class);
+	}
+
+	private IObject add(IClass clazz, InvocationHandler handler, Class<?> type) {
+		IObject object = (IObject) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type },
+				handler);
+		classes.get(indexOf(clazz)).objectIds.add(object.getObjectId());
+		objects.add(object);
+		return object;
+	}
+
+	private Field toField(String name, Object value) {
+		if (value instanceof Boolean) {
+			return new Field(name, IObject.Type.BOOLEAN, value);
+		}
+		if (value instanceof Integer) {
+			return new Field(name, IObject.Type.INT, value);
+		}
+		if (value instanceof Long) {
+			return new Field(name, IObject.Type.LONG, value);
+		}
+		if (value == null) {
+			return new Field(name, IObject.Type.OBJECT, null);
+		}
+		return new Field(name, IObject.Type.OBJECT,
+				new ObjectReference(snapshot, ((IObject) value).getObjectAddress()));
+	}
+
+	private int indexOf(IClass clazz) {
+		for (int i = 0; i < classes.size(); i++) {
+			if (classes.get(i).id == clazz.getObjectId()) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException(clazz + " is not part of this heap");
+	}
+
+	private static long toAddress(int objectId) {
+		return BASE_ADDRESS + objectId * OBJECT_SIZE;
+	}
+
+	private static UnsupportedOperationException unsupported(Method method) {
+		return new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName());
+	}
+
+	private static final class ClassState {
+
+		private final int id;
+		private final String name;
+		private final ClassState superClass;
+		private final List<Integer> objectIds = new ArrayList<>();
+		private IClass proxy;
+
+		ClassState(int id, String name, ClassState superClass) {
+			this.id = id;
+			this.name = name;
+			this.superClass = superClass;
+		}
+
+		boolean doesExtend(String type) {
+			for (ClassState state = this; state != null; state = state.superClass) {
+				if (state.name.equals(type)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	private final class SnapshotHandler implements InvocationHandler {
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getObject":
+				return objects.get((Integer) args[0]);
+			case "mapAddressToId":
+				return (int) (((Long) args[0] - BASE_ADDRESS) / OBJECT_SIZE);
+			case "mapIdToAddress":
+				return toAddress((Integer) args[0]);
+			case "getClassOf":
+				return objects.get((Integer) args[0]).getClazz();
+			case "getHeapSize":
+				return args[0] instanceof int[] ? OBJECT_SIZE * ((int[]) args[0]).length : OBJECT_SIZE;
+			case "getRetainedHeapSize":
+				return OBJECT_SIZE;
+			case "getClasses": {
+				Collection<IClass> all = new ArrayList<>();
+				classes.forEach(state -> all.add(state.proxy));
+				return all;
+			}
+			case "getClassesByName": {
+				Collection<IClass> matches = new ArrayList<>();
+				for (ClassState state : classes) {
+					if (state.name.equals(args[0]) || ((Boolean) args[1] && state.doesExtend((String) args[0]))) {
+						matches.add(state.proxy);
+					}
+				}
+				return matches.isEmpty() ? null : matches;
+			}
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "FakeHeap snapshot";
+			default:
+				throw unsupported(method);
+			}
+		}
+
+	}
+
+	private abstract class ObjectHandler implements InvocationHandler {
+
+		protected final int id;
+		protected final IClass clazz;
+
+		ObjectHandler(int id, IClass clazz) {
+			this.id = id;
+			this.clazz = clazz;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getObjectId":
+				return id;
+			case "getObjectAddress":
+				return toAddress(id);
+			case "getClazz":
+				return clazz;
+			case "getSnapshot":
+				return snapshot;
+			case "getUsedHeapSize":
+			case "getRetainedHeapSize":
+				return OBJECT_SIZE;
+			case "getTechnicalName":
+			case "getDisplayName":
+			case "toString":
+				return clazz.getName() + " @ 0x" + Long.toHexString(toAddress(id));
+			case "hashCode":
+				return id;
+			case "equals":
+				return proxy == args[0];
+			default:
+				return invokeSpecific(proxy, method, args);
+			}
+		}
+
+		protected abstract Object invokeSpecific(Object proxy, Method method, Object[] args) throws Throwable;
+
+	}
+
+	private final class ClassHandler extends ObjectHandler {
+
+		private final ClassState state;
+
+		ClassHandler(ClassState state) {
+			super(state.id, null);
+			this.state = state;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getName":
+			case "getTechnicalName":
+			case "getDisplayName":
+			case "toString":
+				return state.name;
+			case "getClazz":
+				return null;
+			default:
+				return super.invoke(proxy, method, args);
+			}
+		}
+
+		@Override
+		protected Object invokeSpecific(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getObjectIds":
+				return state.objectIds.stream().mapToInt(Integer::intValue).toArray();
+			case "getNumberOfObjects":
+				return state.objectIds.size();
+			case "getSuperClass":
+				return state.superClass == null ? null : state.superClass.proxy;
+			case "getStaticFields":
+				return Collections.emptyList();
+			case "doesExtend":
+				return state.doesExtend((String) args[0]);
+			case "getClassSpecificName":
+				return null;
+			default:
+				throw unsupported(method);
+			}
+		}
+
+	}
+
+	private final class InstanceHandler extends ObjectHandler {
+
+		private final List<Field> fields;
+		private final String value;
+
+		InstanceHandler(int id, IClass clazz, List<Field> fields, String value) {
+			super(id, clazz);
+			this.fields = fields;
+			this.value = value;
+		}
+
+		@Override
+		protected Object invokeSpecific(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getFields":
+				return fields;
+			case "getField":
+				return getField((String) args[0]);
+			case "getClassSpecificName":
+				return value;
+			case "resolveValue":
+				return resolveValue((String) args[0]);
+			default:
+				throw unsupported(method);
+			}
+		}
+
+		private Field getField(String name) {
+			for (Field field : fields) {
+				if (field.getName().equals(name)) {
+					return field;
+				}
+			}
+			return null;
+		}
+
+		private Object resolveValue(String path) throws Exception {
+			int dot = path.indexOf('.');
+			Field field = getField(dot < 0 ? path : path.substring(0, dot));
+			if (field == null) {
+				return null;
+			}
+
+			Object fieldValue = field.getValue();
+			if (fieldValue instanceof ObjectReference) {
+				fieldValue = ((ObjectReference) fieldValue).getObject();
+			}
+			if (dot < 0 || fieldValue == null) {
+				return fieldValue;
+			}
+			return ((IObject) fieldValue).resolveValue(path.substring(dot + 1));
+		}
+
+	}
+
+	private final class ArrayHandler extends ObjectHandler {
+
+		private final Object values;
+		private final int type;
+
+		ArrayHandler(int id, IClass clazz, Object values, int type) {
+			super(id, clazz);
+			this.values = values;
+			this.type = type;
+		}
+
+		@Override
+		protected Object invokeSpecific(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getType":
+				return type;
+			case "getLength":
+				return Array.getLength(values);
+			case "getValueAt":
+				return Array.get(values, (Integer) args[0]);
+			case "getValueArray":
+				if (args == null || args.length == 0) {
+					return values;
+				}
+				Object slice = Array.newInstance(values.getClass().getComponentType(), (Integer) args[1]);
+				System.arraycopy(values, (Integer) args[0], slice, 0, (Integer) args[1]);
+				return slice;
+			case "getClassSpecificName":
+				return null;
+			case "resolveValue":
+				return null;
+			default:
+				throw unsupported(method);
+			}
+		}
+
+	}
+
+}
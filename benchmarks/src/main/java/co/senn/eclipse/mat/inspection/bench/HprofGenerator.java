@@ -0,0 +1,439 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes synthetic HPROF heap dumps holding chosen numbers of the objects the
+ * inspections look for, to measure how they scale before pointing them at
+ * production dumps.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp benchmarks.jar co.senn.eclipse.mat.inspection.bench.HprofGenerator &lt;file.hprof&gt;
+ *     [-requests N] [-pools N] [-loaders N] [-statements N]
+ * </pre>
+ *
+ * Every generated object is a GC root (or reachable from one), so MAT keeps
+ * all of them.
+ */
+public final class HprofGenerator implements AutoCloseable {
+
+	private static final int ID_SIZE = 8;
+	private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final int TAG_STRING = 0x01;
+	private static final int TAG_LOAD_CLASS = 0x02;
+	private static final int TAG_STACK_TRACE = 0x05;
+	private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+	private static final int TAG_HEAP_DUMP_END = 0x2C;
+
+	private static final int ROOT_UNKNOWN = 0xFF;
+	private static final int ROOT_STICKY_CLASS = 0x05;
+	private static final int CLASS_DUMP = 0x20;
+	private static final int INSTANCE_DUMP = 0x21;
+	private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+
+	static final int TYPE_OBJECT = 2;
+	static final int TYPE_BOOLEAN = 4;
+	static final int TYPE_CHAR = 5;
+	static final int TYPE_BYTE = 8;
+	static final int TYPE_INT = 10;
+	static final int TYPE_LONG = 11;
+
+	private static final int STACK_TRACE_SERIAL = 1;
+
+	private final DataOutputStream out;
+	private final ByteArrayOutputStream segmentBuffer = new ByteArrayOutputStream(SEGMENT_SIZE + 1024 * 1024);
+	private final DataOutputStream segment = new DataOutputStream(segmentBuffer);
+	private final Map<String, Long> strings = new HashMap<>();
+	private final Map<String, ClassDef> classes = new HashMap<>();
+
+	private long nextId = 0x1000;
+	private int nextClassSerial = 1;
+
+	public HprofGenerator(OutputStream stream) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(stream, 1024 * 1024));
+		out.write("JAVA PROFILE 1.0.2".getBytes(StandardCharsets.US_ASCII));
+		out.write(0);
+		out.writeInt(ID_SIZE);
+		out.writeLong(System.currentTimeMillis());
+
+		writeRecord(TAG_STACK_TRACE, body -> {
+			body.writeInt(STACK_TRACE_SERIAL);
+			body.writeInt(0); // Thread serial
+			body.writeInt(0); // Frames
+		});
+
+		// The classes MAT expects in every dump
+		ClassDef object = defineClass("java.lang.Object", null);
+		defineClass("java.lang.Class", object);
+		defineClass("java.lang.ClassLoader", object);
+		defineClass("java.lang.String", object, "value", TYPE_OBJECT, "hash", TYPE_INT);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println(
+					"Usage: HprofGenerator <file.hprof> [-requests N] [-pools N] [-loaders N] [-statements N]");
+			System.exit(1);
+		}
+
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			counts.put(args[i], Integer.parseInt(args[i + 1].replace("_", "")));
+		}
+
+		try (HprofGenerator generator = new HprofGenerator(new FileOutputStream(args[0]))) {
+			generator.writeRequests(counts.getOrDefault("-requests", 0), 512);
+			generator.writePools(counts.getOrDefault("-pools", 0));
+			generator.writeLoaders(counts.getOrDefault("-loaders", 0));
+			generator.writeStatements(counts.getOrDefault("-statements", 0), 256);
+		}
+	}
+
+	/**
+	 * Writes {@code org.apache.coyote.Request}s spread over {@code uris}
+	 * distinct URIs, each with its own 8 KB request buffer.
+	 */
+	public void writeRequests(int count, int uris) throws IOException {
+		ClassDef object = classes.get("java.lang.Object");
+		ClassDef byteChunk = defineClass("org.apache.tomcat.util.buf.ByteChunk", object, "buff", TYPE_OBJECT, "start",
+				TYPE_INT, "end", TYPE_INT, "isSet", TYPE_BOOLEAN);
+		ClassDef charChunk = defineClass("org.apache.tomcat.util.buf.CharChunk", object, "buff", TYPE_OBJECT, "start",
+				TYPE_INT, "end", TYPE_INT, "isSet", TYPE_BOOLEAN);
+		ClassDef messageBytes = defineClass("org.apache.tomcat.util.buf.MessageBytes", object, "byteC", TYPE_OBJECT,
+				"charC", TYPE_OBJECT);
+		ClassDef request = defineClass("org.apache.coyote.Request", object, "serverNameMB", TYPE_OBJECT, "methodMB",
+				TYPE_OBJECT, "uriMB", TYPE_OBJECT, "startTime", TYPE_LONG);
+
+		String[] methods = { "GET", "POST", "PUT", "DELETE" };
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			String[] values = { "node" + (i % 8) + ".example.com", methods[i % methods.length],
+					"/api/v1/resource/" + (i % Math.max(1, uris)) };
+
+			byte[] buffer = new byte[8 * 1024];
+			int offset = 0;
+			long[] fields = new long[3];
+			for (int j = 0; j < values.length; j++) {
+				byte[] value = values[j].getBytes(StandardCharsets.ISO_8859_1);
+				System.arraycopy(value, 0, buffer, offset, value.length);
+				fields[j] = offset;
+				offset += value.length + 1;
+			}
+			long buff = writePrimitiveArray(TYPE_BYTE, buffer);
+
+			long[] chunks = new long[3];
+			for (int j = 0; j < values.length; j++) {
+				int start = (int) fields[j];
+				int end = start + values[j].length();
+				long bytes = writeInstance(byteChunk, buff, start, end, true);
+				long chars = writeInstance(charChunk, 0L, 0, 0, false);
+				chunks[j] = writeInstance(messageBytes, bytes, chars);
+			}
+
+			// One in ten requests is in flight, the others are recycled
+			long startTime = i % 10 == 0 ? now - (i % 120_000) : -1L;
+			writeRoot(writeInstance(request, chunks[0], chunks[1], chunks[2], startTime));
+		}
+	}
+
+	/**
+	 * Writes {@code HikariPool}s, every third one with threads awaiting a
+	 * connection.
+	 */
+	public void writePools(int count) throws IOException {
+		ClassDef object = classes.get("java.lang.Object");
+		ClassDef atomicInteger = defineClass("java.util.concurrent.atomic.AtomicInteger", object, "value", TYPE_INT);
+		ClassDef bag = defineClass("com.zaxxer.hikari.util.ConcurrentBag", object, "waiters", TYPE_OBJECT);
+		ClassDef pool = defineClass("com.zaxxer.hikari.pool.HikariPool", object, "connectionBag", TYPE_OBJECT);
+
+		for (int i = 0; i < count; i++) {
+			long waiters = writeInstance(atomicInteger, i % 3 == 0 ? 5 : 0);
+			writeRoot(writeInstance(pool, writeInstance(bag, waiters)));
+		}
+	}
+
+	/**
+	 * Writes {@code WebappClassLoader}s, one in ten of them stopped.
+	 */
+	public void writeLoaders(int count) throws IOException {
+		ClassDef loader = defineClass("org.apache.catalina.loader.WebappClassLoader",
+				classes.get("java.lang.ClassLoader"), "started", TYPE_BOOLEAN);
+
+		for (int i = 0; i < count; i++) {
+			writeRoot(writeInstance(loader, i % 10 != 0));
+		}
+	}
+
+	/**
+	 * Writes H2-style prepared statements spread over {@code sqls} distinct
+	 * SQL texts and one connection per 100 statements.
+	 */
+	public void writeStatements(int count, int sqls) throws IOException {
+		ClassDef object = classes.get("java.lang.Object");
+		ClassDef statement = defineClass("java.sql.Statement", object);
+		ClassDef connection = defineClass("org.h2.jdbc.JdbcConnection", object);
+		ClassDef preparedStatement = defineClass("org.h2.jdbc.JdbcPreparedStatement", statement, "connection",
+				TYPE_OBJECT, "sqlStatement", TYPE_OBJECT);
+
+		List<Long> texts = new ArrayList<>();
+		for (int i = 0; i < Math.max(1, sqls); i++) {
+			texts.add(writeString("SELECT * FROM TABLE_" + i + " WHERE ID = ?"));
+		}
+
+		long current = 0;
+		for (int i = 0; i < count; i++) {
+			if (i % 100 == 0) {
+				current = writeInstance(connection);
+				writeRoot(current);
+			}
+			writeRoot(writeInstance(preparedStatement, current, texts.get(i % texts.size())));
+		}
+	}
+
+	public long writeString(String value) throws IOException {
+		long chars = writePrimitiveArray(TYPE_CHAR, value.toCharArray());
+		return writeInstance(classes.get("java.lang.String"), chars, 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushSegment();
+		writeRecord(TAG_HEAP_DUMP_END, body -> {
+		});
+		out.close();
+	}
+
+	/**
+	 * @param fields field names and types, eg: {@code "value", TYPE_INT}
+	 */
+	ClassDef defineClass(String name, ClassDef superClass, Object... fields) throws IOException {
+		ClassDef clazz = new ClassDef(nextId(), superClass);
+		for (int i = 0; i < fields.length; i += 2) {
+			clazz.names.add(string((String) fields[i]));
+			clazz.types.add((Integer) fields[i + 1]);
+		}
+
+		long nameId = string(name.replace('.', '/'));
+		int serial = nextClassSerial++;
+		writeRecord(TAG_LOAD_CLASS, body -> {
+			body.writeInt(serial);
+			writeId(body, clazz.id);
+			body.writeInt(STACK_TRACE_SERIAL);
+			writeId(body, nameId);
+		});
+
+		segment.writeByte(CLASS_DUMP);
+		writeId(segment, clazz.id);
+		segment.writeInt(STACK_TRACE_SERIAL);
+		writeId(segment, superClass == null ? 0 : superClass.id);
+		for (int i = 0; i < 5; i++) {
+			writeId(segment, 0); // Loader, signers, protection domain, reserved
+		}
+		segment.writeInt(clazz.instanceSize());
+		segment.writeShort(0); // Constant pool
+		segment.writeShort(0); // Static fields
+		segment.writeShort(clazz.names.size());
+		for (int i = 0; i < clazz.names.size(); i++) {
+			writeId(segment, clazz.names.get(i));
+			segment.writeByte(clazz.types.get(i));
+		}
+
+		segment.writeByte(ROOT_STICKY_CLASS);
+		writeId(segment, clazz.id);
+
+		classes.put(name, clazz);
+		return clazz;
+	}
+
+	/**
+	 * @param values the field values of the class, then its superclasses:
+	 *               {@code Long} IDs for references, {@code Boolean},
+	 *               {@code Integer} or {@code Long} for primitives
+	 */
+	long writeInstance(ClassDef clazz, Object... values) throws IOException {
+		long id = nextId();
+		segment.writeByte(INSTANCE_DUMP);
+		writeId(segment, id);
+		segment.writeInt(STACK_TRACE_SERIAL);
+		writeId(segment, clazz.id);
+		segment.writeInt(clazz.instanceSize());
+
+		int i = 0;
+		for (ClassDef c = clazz; c != null; c = c.superClass) {
+			for (int type : c.types) {
+				Object value = values[i++];
+				switch (type) {
+				case TYPE_OBJECT:
+					writeId(segment, (Long) value);
+					break;
+				case TYPE_BOOLEAN:
+					segment.writeBoolean((Boolean) value);
+					break;
+				case TYPE_INT:
+					segment.writeInt((Integer) value);
+					break;
+				case TYPE_LONG:
+					segment.writeLong((Long) value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported field type " + type);
+				}
+			}
+		}
+
+		maybeFlushSegment();
+		return id;
+	}
+
+	long writePrimitiveArray(int type, Object values) throws IOException {
+		long id = nextId();
+		segment.writeByte(PRIMITIVE_ARRAY_DUMP);
+		writeId(segment, id);
+		segment.writeInt(STACK_TRACE_SERIAL);
+		if (type == TYPE_BYTE) {
+			byte[] bytes = (byte[]) values;
+			segment.writeInt(bytes.length);
+			segment.writeByte(type);
+			segment.write(bytes);
+		} else if (type == TYPE_CHAR) {
+			char[] chars = (char[]) values;
+			segment.writeInt(chars.length);
+			segment.writeByte(type);
+			for (char c : chars) {
+				segment.writeChar(c);
+			}
+		} else {
+			throw new IllegalArgumentException("Unsupported array type " + type);
+		}
+
+		maybeFlushSegment();
+		return id;
+	}
+
+	void writeRoot(long id) throws IOException {
+		segment.writeByte(ROOT_UNKNOWN);
+		writeId(segment, id);
+	}
+
+	private long string(String value) throws IOException {
+		Long id = strings.get(value);
+		if (id == null) {
+			long newId = nextId();
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeRecord(TAG_STRING, body -> {
+				writeId(body, newId);
+				body.write(bytes);
+			});
+			strings.put(value, newId);
+			id = newId;
+		}
+		return id;
+	}
+
+	private long nextId() {
+		long id = nextId;
+		nextId += ID_SIZE;
+		return id;
+	}
+
+	private void maybeFlushSegment() throws IOException {
+		if (segmentBuffer.size() >= SEGMENT_SIZE) {
+			flushSegment();
+		}
+	}
+
+	private void flushSegment() throws IOException {
+		if (segmentBuffer.size() == 0) {
+			return;
+		}
+
+		segment.flush();
+		out.writeByte(TAG_HEAP_DUMP_SEGMENT);
+		out.writeInt(0);
+		out.writeInt(segmentBuffer.size());
+		segmentBuffer.writeTo(out);
+		segmentBuffer.reset();
+	}
+
+	/**
+	 * Top-level records may not interleave with heap dump segments, so the
+	 * pending segment is written first.
+	 */
+	private void writeRecord(int tag, RecordBody body) throws IOException {
+		flushSegment();
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(buffer);
+		body.write(data);
+		data.flush();
+
+		out.writeByte(tag);
+		out.writeInt(0);
+		out.writeInt(buffer.size());
+		buffer.writeTo(out);
+	}
+
+	private static void writeId(DataOutputStream stream, long id) throws IOException {
+		stream.writeLong(id);
+	}
+
+	@FunctionalInterface
+	private interface RecordBody {
+
+		void write(DataOutputStream body) throws IOException;
+
+	}
+
+	static final class ClassDef {
+
+		private final long id;
+		private final ClassDef superClass;
+		private final List<Long> names = new ArrayList<>();
+		private final List<Integer> types = new ArrayList<>();
+
+		ClassDef(long id, ClassDef superClass) {
+			this.id = id;
+			this.superClass = superClass;
+		}
+
+		int instanceSize() {
+			int size = 0;
+			for (ClassDef c = this; c != null; c = c.superClass) {
+				for (int type : c.types) {
+					size += type == TYPE_OBJECT ? ID_SIZE : type == TYPE_LONG ? 8 : type == TYPE_INT ? 4 : 1;
+				}
+			}
+			return size;
+		}
+
+	}
+
+}
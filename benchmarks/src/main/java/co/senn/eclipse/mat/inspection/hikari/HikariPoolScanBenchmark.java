@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.hikari;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.util.VoidProgressListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.senn.eclipse.mat.inspection.ObjectScan;
+import co.senn.eclipse.mat.inspection.bench.FakeHeap;
+
+/**
+ * Reading the waiter count of every {@code HikariPool}, as done by
+ * {@link ConnectionPoolExhaustionInspection}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HikariPoolScanBenchmark {
+
+	static final int POOLS = 1_000;
+
+	private ISnapshot snapshot;
+
+	@Setup
+	public void setUp() {
+		FakeHeap heap = new FakeHeap();
+		IClass poolClass = heap.defineClass(HikariPoolScan.TYPE, null);
+		IClass bagClass = heap.defineClass("com.zaxxer.hikari.util.ConcurrentBag", null);
+		IClass atomicIntegerClass = heap.defineClass("java.util.concurrent.atomic.AtomicInteger", null);
+
+		for (int i = 0; i < POOLS; i++) {
+			heap.newInstance(poolClass, "connectionBag",
+					heap.newInstance(bagClass, "waiters", heap.newInstance(atomicIntegerClass, "value", i % 3)));
+		}
+
+		snapshot = heap.getSnapshot();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POOLS)
+	public int scan() throws SnapshotException {
+		HikariPoolScan pools = new HikariPoolScan();
+		ObjectScan scan = new ObjectScan();
+		pools.subscribe(scan);
+		scan.run(snapshot, new VoidProgressListener());
+		return pools.size();
+	}
+
+}
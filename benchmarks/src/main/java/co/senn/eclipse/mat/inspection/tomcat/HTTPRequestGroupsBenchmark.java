@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.senn.eclipse.mat.inspection.TopGroups;
+
+/**
+ * Grouping decoded HTTP requests and merging partial groups, as done by
+ * {@link HTTPRequestListInspection} after decoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HTTPRequestGroupsBenchmark {
+
+	static final int REQUESTS = 100_000;
+	static final int PARTITIONS = 16;
+
+	@Param({ "16", "1024", "65536" })
+	public int groups;
+
+	private String[] hosts;
+	private String[] methods;
+	private String[] uris;
+
+	@Setup
+	public void setUp() {
+		hosts = new String[REQUESTS];
+		methods = new String[REQUESTS];
+		uris = new String[REQUESTS];
+		for (int i = 0; i < REQUESTS; i++) {
+			int group = i % groups;
+			hosts[i] = "node" + (group % 4) + ".example.com";
+			methods[i] = group % 2 == 0 ? "GET" : "POST";
+			uris[i] = "/api/v1/resource/" + group;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(REQUESTS)
+	public Object group() {
+		TopGroups<HTTPRequestKey> result = new TopGroups<>(1);
+		for (int i = 0; i < REQUESTS; i++) {
+			result.add(new HTTPRequestKey(hosts[i], methods[i], uris[i]), i).add(0, 80);
+		}
+		return HTTPRequestListInspection.toResults(result, 1000);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(REQUESTS)
+	public Object groupAndMerge() {
+		int partitionSize = REQUESTS / PARTITIONS;
+		TopGroups<HTTPRequestKey> result = null;
+		for (int p = 0; p < PARTITIONS; p++) {
+			TopGroups<HTTPRequestKey> partial = new TopGroups<>(1);
+			for (int i = p * partitionSize; i < (p + 1) * partitionSize; i++) {
+				partial.add(new HTTPRequestKey(hosts[i], methods[i], uris[i]), i).add(0, 80);
+			}
+			result = result == null ? partial : result.merge(partial);
+		}
+		return HTTPRequestListInspection.toResults(result, 1000);
+	}
+
+}
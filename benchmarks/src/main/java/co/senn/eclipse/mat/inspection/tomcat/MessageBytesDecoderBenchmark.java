@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.bench.FakeHeap;
+
+/**
+ * Decoding the host, method and URI of Tomcat requests whose
+ * {@code MessageBytes} share an 8 KB request buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBytesDecoderBenchmark {
+
+	static final int REQUESTS = 10_000;
+	static final int BUFFER_SIZE = 8 * 1024;
+
+	private IObject[] requests;
+	private FieldPath serverName;
+	private FieldPath method;
+	private FieldPath uri;
+	private MessageBytesDecoder warmDecoder;
+
+	@Setup
+	public void setUp() throws SnapshotException {
+		FakeHeap heap = new FakeHeap();
+		requests = createRequests(heap, REQUESTS, 64);
+
+		serverName = FieldPath.compile("serverNameMB");
+		method = FieldPath.compile("methodMB");
+		uri = FieldPath.compile("uriMB");
+
+		warmDecoder = new MessageBytesDecoder();
+		decodeAll(warmDecoder, null);
+	}
+
+	/**
+	 * A new decoder for every pass, so every slice is read from the fake dump
+	 */
+	@Benchmark
+	@OperationsPerInvocation(REQUESTS)
+	public void decodeCold(Blackhole blackhole) throws SnapshotException {
+		decodeAll(new MessageBytesDecoder(), blackhole);
+	}
+
+	/**
+	 * A decoder whose slice cache already holds every value
+	 */
+	@Benchmark
+	@OperationsPerInvocation(REQUESTS)
+	public void decodeWarm(Blackhole blackhole) throws SnapshotException {
+		decodeAll(warmDecoder, blackhole);
+	}
+
+	private void decodeAll(MessageBytesDecoder decoder, Blackhole blackhole) throws SnapshotException {
+		for (IObject request : requests) {
+			String host = decoder.decode(request, serverName);
+			String m = decoder.decode(request, method);
+			String u = decoder.decode(request, uri);
+			if (blackhole != null) {
+				blackhole.consume(host);
+				blackhole.consume(m);
+				blackhole.consume(u);
+			}
+		}
+	}
+
+	/**
+	 * Creates {@code org.apache.coyote.Request}s for {@code uris} distinct
+	 * URIs, each with its host, method and URI in one request buffer.
+	 */
+	static IObject[] createRequests(FakeHeap heap, int count, int uris) {
+		IClass requestClass = heap.defineClass("org.apache.coyote.Request", null);
+		IClass messageBytesClass = heap.defineClass("org.apache.tomcat.util.buf.MessageBytes", null);
+		IClass byteChunkClass = heap.defineClass("org.apache.tomcat.util.buf.ByteChunk", null);
+		IClass charChunkClass = heap.defineClass("org.apache.tomcat.util.buf.CharChunk", null);
+
+		String[] methods = { "GET", "POST", "PUT", "DELETE" };
+		IObject[] requests = new IObject[count];
+		for (int i = 0; i < count; i++) {
+			String method = methods[i % methods.length];
+			String uri = "/api/v1/resource/" + (i % uris);
+			String host = "node" + (i % 4) + ".example.com";
+
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int offset = 0;
+			int[] bounds = new int[6];
+			for (int j = 0; j < 3; j++) {
+				byte[] value = (j == 0 ? method : j == 1 ? uri : host).getBytes(StandardCharsets.ISO_8859_1);
+				System.arraycopy(value, 0, buffer, offset, value.length);
+				bounds[j * 2] = offset;
+				bounds[j * 2 + 1] = offset + value.length;
+				offset += value.length + 1;
+			}
+			IObject buff = heap.newByteArray(buffer);
+
+			IObject[] messageBytes = new IObject[3];
+			for (int j = 0; j < 3; j++) {
+				IObject byteChunk = heap.newInstance(byteChunkClass, "isSet", true, "buff", buff, "start",
+						bounds[j * 2], "end", bounds[j * 2 + 1]);
+				IObject charChunk = heap.newInstance(charChunkClass, "isSet", false, "buff", null, "start", 0,
+						"end", 0);
+				messageBytes[j] = heap.newInstance(messageBytesClass, "byteC", byteChunk, "charC", charChunk);
+			}
+
+			requests[i] = heap.newInstance(requestClass, "methodMB", messageBytes[0], "uriMB", messageBytes[1],
+					"serverNameMB", messageBytes[2], "startTime", -1L);
+		}
+		return requests;
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.util.VoidProgressListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.senn.eclipse.mat.inspection.ObjectScan;
+import co.senn.eclipse.mat.inspection.bench.FakeHeap;
+
+/**
+ * Reading the lifecycle state of every {@code WebappClassLoader}, half of
+ * them in the layout of older Tomcat versions ({@code started}) and half in
+ * that of newer ones ({@code state.name}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebappClassLoaderScanBenchmark {
+
+	static final int LOADERS = 10_000;
+
+	private ISnapshot snapshot;
+
+	@Setup
+	public void setUp() {
+		FakeHeap heap = new FakeHeap();
+		IClass oldLoaderClass = heap.defineClass(WebappClassLoaderScan.TYPE, null);
+		IClass newLoaderClass = heap.defineClass(WebappClassLoaderScan.TYPE + "$Newer", oldLoaderClass);
+		IClass stateClass = heap.defineClass("org.apache.catalina.LifecycleState", null);
+
+		IObject started = heap.newInstance(stateClass, "name", heap.newString("STARTED"));
+		IObject destroyed = heap.newInstance(stateClass, "name", heap.newString("DESTROYED"));
+		for (int i = 0; i < LOADERS; i++) {
+			if (i % 2 == 0) {
+				heap.newInstance(oldLoaderClass, "started", i % 10 != 0);
+			} else {
+				heap.newInstance(newLoaderClass, "state", i % 10 == 1 ? destroyed : started);
+			}
+		}
+
+		snapshot = heap.getSnapshot();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOADERS)
+	public Object scan() throws SnapshotException {
+		WebappClassLoaderScan loaders = new WebappClassLoaderScan();
+		ObjectScan scan = new ObjectScan();
+		loaders.subscribe(scan);
+		scan.run(snapshot, new VoidProgressListener());
+		return loaders.getLoaders();
+	}
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.harness;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.mat.query.IResult;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.util.VoidProgressListener;
+
+import co.senn.eclipse.mat.inspection.InspectionMetrics;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.CsvRowWriter;
+import co.senn.eclipse.mat.inspection.export.IRowWriter;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+import co.senn.eclipse.mat.inspection.export.JsonLinesRowWriter;
+import co.senn.eclipse.mat.inspection.export.ResultExporter;
+import co.senn.eclipse.mat.inspection.harness.InspectionRunner.InspectionRun;
+import co.senn.eclipse.mat.inspection.harness.InspectionRunner.RegisteredInspection;
+
+/**
+ * Parses every heap dump of a directory and runs every registered inspection
+ * against it, several dumps at a time, writing a JSON report per dump and a
+ * CSV summary of the whole fleet:
+ *
+ * <pre>
+ * MemoryAnalyzer -consoleLog -application co.senn.eclipse.mat.inspection.impl.batch_inspect
+ *     [-output dir] [-threads n] [-memory mb] [-rows jsonl|csv] directory
+ * </pre>
+ *
+ * Dumps are parsed concurrently under a global memory budget (by default
+ * three quarters of the maximum heap): each dump reserves an estimate of
+ * what parsing and inspecting it needs, half its file size, before it is
+ * opened, and the largest dumps run alone. Reports go to
+ * {@code <directory>/inspection-reports} unless {@code -output} is given.
+ * With {@code -rows}, the rows of every result are also exported, one file
+ * per dump and inspection (see {@link ResultExporter}).
+ * <p>
+ * Every dump gets its own inspection instances. CPU time and the objects
+ * visited are recorded per run, and for the shared scan on its own, but wall time is only reported with
+ * {@code -threads 1}, since concurrent dumps compete for the same processors.
+ * Results are not cached unless {@code resultCache} is set explicitly.
+ */
+public class BatchInspector implements IApplication {
+
+	private static final String REPORT_SUFFIX = ".inspections.json";
+	private static final String SUMMARY = "fleet-summary.csv";
+	private static final String JSONL = "jsonl";
+	private static final String CSV = "csv";
+
+	private static final long MB = 1024 * 1024;
+
+	@Override
+	public Object start(IApplicationContext context) throws Exception {
+		String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+
+		File directory = null;
+		File output = null;
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		long memory = Runtime.getRuntime().maxMemory() / MB * 3 / 4;
+		String rows = null;
+		for (int i = 0; i < args.length; i++) {
+			if ("-output".equals(args[i]) && i + 1 < args.length) {
+				output = new File(args[++i]);
+			} else if ("-threads".equals(args[i]) && i + 1 < args.length) {
+				threads = Math.max(1, Integer.parseInt(args[++i]));
+			} else if ("-memory".equals(args[i]) && i + 1 < args.length) {
+				memory = Math.max(1, Long.parseLong(args[++i]));
+			} else if ("-rows".equals(args[i]) && i + 1 < args.length) {
+				rows = args[++i];
+			} else {
+				directory = new File(args[i]);
+			}
+		}
+
+		if (directory == null || !directory.isDirectory()
+				|| (rows != null && !JSONL.equals(rows) && !CSV.equals(rows))) {
+			System.err.println("Usage: [-output dir] [-threads n] [-memory mb] [-rows jsonl|csv] directory");
+			return Integer.valueOf(1);
+		}
+		if (output == null) {
+			output = new File(directory, "inspection-reports");
+		}
+		Files.createDirectories(output.toPath());
+
+		File[] dumps = directory.listFiles((dir, name) -> name.toLowerCase().endsWith(".hprof"));
+		Arrays.sort(dumps);
+		InspectionRunner.disableResultCache();
+		List<RegisteredInspection> inspections = InspectionRunner.getInspections();
+
+		int budget = (int) Math.min(Integer.MAX_VALUE, memory);
+		Semaphore permits = new Semaphore(budget, true);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<DumpReport>> futures = new ArrayList<>();
+		File reports = output;
+		String format = rows;
+		boolean timed = threads == 1;
+		for (File dump : dumps) {
+			futures.add(executor.submit(() -> {
+				int reserved = (int) Math.min(budget, Math.max(1, dump.length() / 2 / MB));
+				permits.acquire(reserved);
+				try {
+					return inspect(dump, inspections, reports, format, timed);
+				} finally {
+					permits.release(reserved);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		File summary = new File(output, SUMMARY);
+		try (CsvRowWriter out = new CsvRowWriter(Files.newBufferedWriter(summary.toPath(), StandardCharsets.UTF_8))) {
+			List<String> header = new ArrayList<>(Arrays.asList("dump", "dump size", "status", "parse ms", "warnings",
+					"errors"));
+			for (RegisteredInspection inspection : inspections) {
+				header.add(inspection.id);
+			}
+			out.begin(header.toArray(new String[0]));
+
+			for (int i = 0; i < dumps.length; i++) {
+				DumpReport report;
+				try {
+					report = futures.get(i).get();
+				} catch (ExecutionException e) {
+					report = DumpReport.failed(e.getCause().toString(), inspections.size());
+				}
+				List<String> row = new ArrayList<>(Arrays.asList(dumps[i].getName(),
+						Long.toString(dumps[i].length()), report.failure == null ? "OK" : "FAILED: " + report.failure,
+						Long.toString(report.parseMillis), Integer.toString(report.warnings),
+						Integer.toString(report.errors)));
+				row.addAll(report.severities);
+				out.row(row.toArray());
+				out.flush();
+				System.out.println(dumps[i].getName() + ": " + (report.failure == null ? "OK" : "FAILED"));
+			}
+		}
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		System.out.println("Reports written to " + output.getAbsolutePath());
+		return IApplication.EXIT_OK;
+	}
+
+	/**
+	 * Parses the dump, runs the inspections and writes the dump's report.
+	 * Failures are recorded in the returned report rather than thrown, so one
+	 * broken dump does not stop the batch.
+	 */
+	private static DumpReport inspect(File dump, List<RegisteredInspection> inspections, File output, String rows,
+			boolean timed) throws IOException {
+		DumpReport report = new DumpReport();
+		File file = new File(output, dump.getName() + REPORT_SUFFIX);
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+			out.print("{\"dump\":" + JsonLinesRowWriter.quote(dump.getName()) + ",\"dumpSize\":" + dump.length());
+
+			long start = System.nanoTime();
+			ISnapshot snapshot;
+			try {
+				snapshot = SnapshotFactory.openSnapshot(dump, Collections.emptyMap(), new VoidProgressListener());
+			} catch (Exception | LinkageError e) {
+				out.println(",\"error\":" + JsonLinesRowWriter.quote(e.toString()) + "}");
+				return DumpReport.failed(e.toString(), inspections.size());
+			}
+
+			try {
+				report.parseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				out.print(",\"parseMillis\":" + report.parseMillis + ",\"inspections\":[");
+				for (int i = 0; i < inspections.size(); i++) {
+					InspectionRun run = InspectionRunner.run(snapshot, inspections.get(i), new VoidProgressListener());
+					if (i > 0) {
+						out.print(',');
+					}
+					write(out, inspections.get(i), run, dump, output, rows, timed);
+					report.add(run);
+				}
+				out.print(']');
+
+				// The shared scan is run by whichever inspection needs it first, but measured apart
+				InspectionMetrics shared = InspectionMetrics.getRecorded(snapshot, SharedScan.METRICS);
+				if (shared != null) {
+					out.print(",\"sharedScan\":{");
+					write(out, shared, timed);
+					out.print('}');
+				}
+				out.println('}');
+			} finally {
+				SnapshotFactory.dispose(snapshot);
+			}
+		}
+		return report;
+	}
+
+	private static void write(PrintWriter out, RegisteredInspection inspection, InspectionRun run, File dump,
+			File output, String rows, boolean timed) throws IOException {
+		out.print("{\"id\":" + JsonLinesRowWriter.quote(run.id) + ",\"name\":"
+				+ JsonLinesRowWriter.quote(inspection.name) + ",\"technologyPresent\":" + run.isTechnologyPresent());
+		if (run.getError() != null) {
+			out.print(",\"severity\":\"ERROR\",\"summary\":" + JsonLinesRowWriter.quote(run.getError().toString()));
+		} else if (run.getResult() != null) {
+			out.print(",\"severity\":" + JsonLinesRowWriter.quote(String.valueOf(run.getResult().getSeverity()))
+					+ ",\"summary\":" + JsonLinesRowWriter.quote(run.getResult().getResultSummary()));
+		}
+
+		if (rows != null) {
+			IResult result = run.getResult() != null ? run.getResult().getResult() : null;
+			boolean exportable = result != null && ResultExporter.isExportable(result);
+			if (exportable || run.getInspection() instanceof ITabular) {
+				// Runs that found nothing still get a file with the columns, so every dump has the same schema
+				File file = new File(output, dump.getName() + '.' + run.id + '.' + rows);
+				try (IRowWriter writer = JSONL.equals(rows) ? new JsonLinesRowWriter(newWriter(file))
+						: new CsvRowWriter(newWriter(file))) {
+					int count = 0;
+					if (exportable) {
+						count = ResultExporter.export(result, writer);
+					} else {
+						ResultExporter.begin(((ITabular) run.getInspection()).getColumns(), writer);
+					}
+					out.print(",\"rows\":" + count + ",\"rowsFile\":" + JsonLinesRowWriter.quote(file.getName()));
+				}
+			}
+		}
+
+		InspectionMetrics metrics = run.getMetrics();
+		if (metrics != null) {
+			out.print(',');
+			write(out, metrics, timed);
+		}
+		out.print('}');
+	}
+
+	private static void write(PrintWriter out, InspectionMetrics metrics, boolean timed) {
+		if (timed) {
+			out.print("\"wallMillis\":" + TimeUnit.NANOSECONDS.toMillis(metrics.getWallTime()) + ',');
+		}
+		out.print("\"cpuMillis\":" + TimeUnit.NANOSECONDS.toMillis(metrics.getCpuTime()) + ",\"objectsVisited\":"
+				+ metrics.getObjectsVisited());
+
+		List<String> absentFields = metrics.getAbsentFields();
+		if (!absentFields.isEmpty()) {
+			out.print(",\"absentFields\":[");
+			for (int i = 0; i < absentFields.size(); i++) {
+				out.print((i > 0 ? "," : "") + JsonLinesRowWriter.quote(absentFields.get(i)));
+			}
+			out.print(']');
+		}
+	}
+
+	private static Writer newWriter(File file) throws IOException {
+		return Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	private static final class DumpReport {
+
+		private final List<String> severities = new ArrayList<>();
+		private String failure;
+		private long parseMillis;
+		private int warnings;
+		private int errors;
+
+		static DumpReport failed(String failure, int inspections) {
+			DumpReport report = new DumpReport();
+			report.failure = failure;
+			report.severities.addAll(Collections.nCopies(inspections, ""));
+			return report;
+		}
+
+		void add(InspectionRun run) {
+			if (run.getError() != null) {
+				severities.add("ERROR");
+				errors++;
+			} else if (run.getResult() != null) {
+				severities.add(String.valueOf(run.getResult().getSeverity()));
+				if (run.getResult().getSeverity() == InspectionResultSeverity.WARN) {
+					warnings++;
+				}
+			} else {
+				severities.add("");
+			}
+		}
+
+	}
+
+}
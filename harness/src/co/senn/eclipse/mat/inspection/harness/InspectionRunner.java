@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.harness;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.InspectionMetrics;
+import co.senn.eclipse.mat.inspection.InspectionRegistry;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.api.IInspection;
+import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+import co.senn.eclipse.mat.inspection.api.ITechnology;
+
+/**
+ * Runs the inspections registered with the inspection framework outside of
+ * the UI, measuring each run.
+ */
+public final class InspectionRunner {
+
+	private InspectionRunner() {
+	}
+
+	/**
+	 * Turns the {@linkplain InspectionSettings#isResultCache() result cache}
+	 * off unless it was set explicitly, so that what the harnesses measure are
+	 * actual runs rather than cache hits.
+	 */
+	public static void disableResultCache() {
+		if (System.getProperty(InspectionSettings.RESULT_CACHE) == null) {
+			System.setProperty(InspectionSettings.RESULT_CACHE, Boolean.FALSE.toString());
+		}
+	}
+
+	/**
+	 * @return every inspection registered by any plug-in, in registration order
+	 */
+	public static List<RegisteredInspection> getInspections() throws CoreException {
+		Map<String, ITechnology> technologies = new HashMap<>();
+		for (IConfigurationElement element : Platform.getExtensionRegistry()
+				.getConfigurationElementsFor(InspectionRegistry.TECHNOLOGY_EXTENSION_POINT)) {
+			technologies.put(element.getAttribute("id"), (ITechnology) element.createExecutableExtension("impl"));
+		}
+
+		List<RegisteredInspection> inspections = new ArrayList<>();
+		for (IConfigurationElement element : Platform.getExtensionRegistry()
+				.getConfigurationElementsFor(InspectionRegistry.INSPECTION_EXTENSION_POINT)) {
+			String technology = element.getAttribute("technology");
+			inspections.add(new RegisteredInspection(element, technologies.get(technology)));
+		}
+		return inspections;
+	}
+
+	/**
+	 * Runs a new instance of an inspection if its technology is present in the
+	 * snapshot. Errors are recorded in the returned run rather than thrown, so
+	 * one failing inspection does not stop the others.
+	 * <p>
+	 * Runs may be concurrent, but the peak heap is measured for the whole JVM
+	 * and is only meaningful when runs are not.
+	 */
+	public static InspectionRun run(ISnapshot snapshot, RegisteredInspection inspection, IProgressListener listener) {
+		InspectionRun run = new InspectionRun(inspection.id);
+
+		resetPeakHeap();
+		try {
+			// Inspections cache field indices by class ID, so instances are not shared between snapshots
+			IInspection instance = inspection.newInspection();
+			run.inspection = instance;
+			run.result = InspectionMetrics.record(snapshot, instance.getClass().getName(), () -> {
+				run.metrics = InspectionMetrics.current();
+				run.technologyPresent = inspection.technology == null || inspection.technology.isPresent(snapshot);
+				return run.technologyPresent ? instance.execute(snapshot, listener) : null;
+			});
+		} catch (Exception | LinkageError e) {
+			run.error = e;
+		}
+		run.peakHeap = getPeakHeap();
+
+		return run;
+	}
+
+	public static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * @return the sum of the peak usage of every heap memory pool since the
+	 *         last {@link #resetPeakHeap()}, an upper bound of the actual peak
+	 */
+	public static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	public static final class RegisteredInspection {
+
+		public final String id;
+		public final String name;
+		private final IConfigurationElement element;
+		final ITechnology technology;
+
+		RegisteredInspection(IConfigurationElement element, ITechnology technology) {
+			this.id = element.getAttribute("id");
+			this.name = element.getAttribute("name");
+			this.element = element;
+			this.technology = technology;
+		}
+
+		/**
+		 * @return a new instance of the inspection, for a single snapshot
+		 */
+		public IInspection newInspection() throws CoreException {
+			return (IInspection) element.createExecutableExtension("impl");
+		}
+
+	}
+
+	public static final class InspectionRun {
+
+		public final String id;
+		private IInspection inspection;
+		private boolean technologyPresent;
+		private IInspectionResult result;
+		private Throwable error;
+		private InspectionMetrics metrics;
+		private long peakHeap;
+
+		InspectionRun(String id) {
+			this.id = id;
+		}
+
+		/**
+		 * @return the instance that ran, or {@code null} if it could not be
+		 *         created
+		 */
+		public IInspection getInspection() {
+			return inspection;
+		}
+
+		public boolean isTechnologyPresent() {
+			return technologyPresent;
+		}
+
+		/**
+		 * @return the result, or {@code null} if the technology is absent or the
+		 *         inspection failed
+		 */
+		public IInspectionResult getResult() {
+			return result;
+		}
+
+		public Throwable getError() {
+			return error;
+		}
+
+		/**
+		 * @return the metrics of the run, technology check included
+		 */
+		public InspectionMetrics getMetrics() {
+			return metrics;
+		}
+
+		public long getPeakHeap() {
+			return peakHeap;
+		}
+
+	}
+
+}
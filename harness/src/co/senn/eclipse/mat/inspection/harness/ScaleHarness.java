@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.harness;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.util.VoidProgressListener;
+import org.osgi.framework.FrameworkUtil;
+
+import co.senn.eclipse.mat.inspection.InspectionMetrics;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.export.CsvRowWriter;
+import co.senn.eclipse.mat.inspection.harness.InspectionRunner.InspectionRun;
+import co.senn.eclipse.mat.inspection.harness.InspectionRunner.RegisteredInspection;
+
+/**
+ * Parses heap dumps and runs every registered inspection against them,
+ * writing one CSV row per dump and inspection, and one for the
+ * {@value SharedScan#METRICS} pass the inspections share. Used with the dumps written by
+ * the benchmarks' {@code HprofGenerator} to compare versions at scale:
+ *
+ * <pre>
+ * MemoryAnalyzer -consoleLog -application co.senn.eclipse.mat.inspection.impl.scale_harness
+ *     [-report report.csv] dump.hprof...
+ * </pre>
+ *
+ * Results are not cached unless {@code resultCache} is set explicitly.
+ */
+public class ScaleHarness implements IApplication {
+
+	// @formatter:off
+	private static final String[] COLUMNS = {
+			"version", "dump", "dump size", "inspection", "technology present", "wall ms", "cpu ms", "peak heap",
+			"allocated bytes", "objects visited", "fields resolved", "primitive bytes read", "severity", "summary"
+	};
+	// @formatter:on
+
+	@Override
+	public Object start(IApplicationContext context) throws Exception {
+		String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+
+		File report = new File("scale-report.csv");
+		List<File> dumps = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if ("-report".equals(args[i]) && i + 1 < args.length) {
+				report = new File(args[++i]);
+			} else {
+				dumps.add(new File(args[i]));
+			}
+		}
+
+		String version = FrameworkUtil.getBundle(ScaleHarness.class).getVersion().toString();
+		InspectionRunner.disableResultCache();
+		List<RegisteredInspection> inspections = InspectionRunner.getInspections();
+
+		try (CsvRowWriter out = new CsvRowWriter(Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8))) {
+			out.begin(COLUMNS);
+			for (File dump : dumps) {
+				run(version, dump, inspections, out);
+				out.flush();
+			}
+		}
+
+		System.out.println("Report written to " + report.getAbsolutePath());
+		return IApplication.EXIT_OK;
+	}
+
+	private static void run(String version, File dump, List<RegisteredInspection> inspections, CsvRowWriter out)
+			throws Exception {
+		String size = Long.toString(Files.size(dump.toPath()));
+
+		InspectionRunner.resetPeakHeap();
+		long start = System.nanoTime();
+		ISnapshot snapshot = SnapshotFactory.openSnapshot(dump, Collections.emptyMap(), new VoidProgressListener());
+		try {
+			out.row(version, dump.getName(), size, "<parse>", "", millis(System.nanoTime() - start), "",
+					Long.toString(InspectionRunner.getPeakHeap()), "", "", "", "", "", "");
+
+			for (RegisteredInspection inspection : inspections) {
+				InspectionRun run = InspectionRunner.run(snapshot, inspection, new VoidProgressListener());
+				String severity = "";
+				String summary = "";
+				if (run.getError() != null) {
+					severity = "ERROR";
+					summary = run.getError().toString();
+				} else if (run.getResult() != null) {
+					severity = String.valueOf(run.getResult().getSeverity());
+					summary = run.getResult().getResultSummary();
+				}
+
+				InspectionMetrics metrics = run.getMetrics();
+				out.row(version, dump.getName(), size, run.id, Boolean.toString(run.isTechnologyPresent()),
+						millis(metrics.getWallTime()), millis(metrics.getCpuTime()), Long.toString(run.getPeakHeap()),
+						Long.toString(metrics.getAllocatedBytes()), Long.toString(metrics.getObjectsVisited()),
+						Long.toString(metrics.getFieldsResolved()), Long.toString(metrics.getPrimitiveBytesRead()),
+						severity, summary);
+			}
+
+			// The shared scan is run by whichever inspection needs it first, but measured apart
+			InspectionMetrics shared = InspectionMetrics.getRecorded(snapshot, SharedScan.METRICS);
+			if (shared != null) {
+				out.row(version, dump.getName(), size, SharedScan.METRICS, "", millis(shared.getWallTime()),
+						millis(shared.getCpuTime()), "", Long.toString(shared.getAllocatedBytes()),
+						Long.toString(shared.getObjectsVisited()), Long.toString(shared.getFieldsResolved()),
+						Long.toString(shared.getPrimitiveBytesRead()), "", "");
+			}
+		} finally {
+			SnapshotFactory.dispose(snapshot);
+		}
+	}
+
+	private static String millis(long nanos) {
+		return Long.toString(TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+	@Override
+	public void stop() {
+	}
+
+}
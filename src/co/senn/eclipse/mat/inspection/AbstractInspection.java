@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.api.IInspection;
+import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+
+/**
+ * An inspection whose runs are measured, with the {@link InspectionMetrics}
+ * attached to its result, and limited to the configured
+ * {@linkplain InspectionBudget time budget}. A result produced after the
+ * budget ran out is marked {@linkplain InspectionResult#isIncomplete()
+ * incomplete}. Complete results are kept in the {@link ResultCache}.
+ */
+public abstract class AbstractInspection implements IInspection {
+
+	@Override
+	public final IInspectionResult execute(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		return InspectionMetrics.record(snapshot, getClass().getName(), () -> {
+			String id = InspectionRegistry.getId(getClass().getName());
+			ResultCache.Entry cached = ResultCache.load(snapshot, id);
+			if (cached != null) {
+				if (cached.result != null) {
+					cached.result.setMetrics(InspectionMetrics.current());
+				}
+				return cached.result;
+			}
+
+			InspectionBudget budget = InspectionBudget.start(InspectionSettings.getTimeBudget());
+			InspectionResult result;
+			try {
+				result = inspect(snapshot, listener);
+			} finally {
+				budget.end();
+			}
+
+			if (result != null) {
+				result.setMetrics(InspectionMetrics.current());
+				result.setIncomplete(budget.wasExhausted());
+				result.setAbsentFields(InspectionMetrics.current().getAbsentFields());
+			}
+			if (!budget.wasExhausted()) {
+				ResultCache.store(snapshot, id, result);
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * @return the result, or {@code null} if there is nothing to report
+	 */
+	protected abstract InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception;
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+/**
+ * A result table read back from the {@link ResultCache}: plain column values,
+ * and the object IDs of each row as its context.
+ */
+final class CachedResultTable implements IResultTable {
+
+	private final Column[] columns;
+	private final List<Object[]> rows;
+	private final List<int[]> contexts;
+
+	CachedResultTable(Column[] columns, List<Object[]> rows, List<int[]> contexts) {
+		this.columns = columns;
+		this.rows = rows;
+		this.contexts = contexts;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return columns;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rowId;
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		return rows.get((Integer) row)[columnIndex];
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		int[] objectIds = contexts.get((Integer) row);
+		return objectIds == null ? null : new ObjectSetContext(objectIds);
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.model.Field;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IInstance;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.ObjectReference;
+
+/**
+ * A dotted field path (eg: {@code "connectionBag.waiters.value"}) compiled
+ * once and resolved by field index.
+ * <p>
+ * Unlike {@link IObject#resolveValue(String)}, the path is not parsed again
+ * on every call: the index of each segment's field is looked up once per
+ * class and cached. A path whose field does not exist in the class at hand
+ * (eg: in another Tomcat or HikariCP version) resolves to {@link #ABSENT},
+ * which is distinct from a field that is present but {@code null}.
+ * <p>
+ * Absent paths are recorded in the {@link InspectionMetrics} of the run, so
+ * that version mismatches can be reported, unless the path was compiled as
+ * {@linkplain #optional(String) optional} or is one of several
+ * {@linkplain #firstOf(String...) alternatives} of which another exists.
+ * <p>
+ * Instances are thread-safe. Cached indices are checked against the field
+ * name before use, since class object IDs are only unique within a snapshot.
+ */
+public final class FieldPath {
+
+	/**
+	 * The result of resolving a path through a class that lacks the field
+	 */
+	public static final Object ABSENT = new Object() {
+
+		@Override
+		public String toString() {
+			return "<absent>";
+		}
+
+	};
+
+	private static final int NOT_FOUND = -1;
+
+	private final String path;
+	private final Segment[][] alternatives;
+	private final boolean optional;
+	private final ConcurrentHashMap<Integer, InspectionMetrics> reported = new ConcurrentHashMap<>();
+
+	private FieldPath(String[] paths, boolean optional) {
+		this.path = String.join("|", paths);
+		this.optional = optional;
+
+		this.alternatives = new Segment[paths.length][];
+		for (int i = 0; i < paths.length; i++) {
+			String[] names = paths[i].split("\\.");
+			alternatives[i] = new Segment[names.length];
+			for (int j = 0; j < names.length; j++) {
+				alternatives[i][j] = new Segment(names[j]);
+			}
+		}
+	}
+
+	public static FieldPath compile(String path) {
+		return new FieldPath(new String[] { path }, false);
+	}
+
+	/**
+	 * @return a path to a field that only some versions have, which is not
+	 *         reported when absent
+	 */
+	public static FieldPath optional(String path) {
+		return new FieldPath(new String[] { path }, true);
+	}
+
+	/**
+	 * @return a path that resolves to the value of the first of the given
+	 *         paths that exists and is not {@code null} (eg: the same value in
+	 *         several JDBC drivers), and is reported only if none exists
+	 */
+	public static FieldPath firstOf(String... paths) {
+		return new FieldPath(paths, false);
+	}
+
+	public static boolean isAbsent(Object value) {
+		return value == ABSENT;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the value of the field: an {@link IObject} for references, a
+	 *         wrapper for primitives, {@code null} if the field (or any field
+	 *         along the path) is {@code null}, or {@link #ABSENT} if a field
+	 *         does not exist
+	 */
+	public Object resolve(IObject object) throws SnapshotException {
+		Object result = ABSENT;
+		for (Segment[] segments : alternatives) {
+			Object value = resolve(object, segments);
+			if (value != null && value != ABSENT) {
+				return value;
+			}
+			if (value == null) {
+				result = null;
+			}
+		}
+
+		if (result == ABSENT && !optional) {
+			reportAbsent(object.getClazz());
+		}
+		return result;
+	}
+
+	private static Object resolve(IObject object, Segment[] segments) throws SnapshotException {
+		Object value = object;
+		for (Segment segment : segments) {
+			if (value == null) {
+				return null;
+			}
+			if (!(value instanceof IObject)) {
+				return ABSENT;
+			}
+
+			value = segment.resolve((IObject) value);
+			if (value == ABSENT) {
+				return ABSENT;
+			}
+		}
+
+		return value;
+	}
+
+	/**
+	 * @return the value of the {@code String} the path refers to, {@code null}
+	 *         if it is {@code null} or {@link #ABSENT}
+	 */
+	public String resolveString(IObject object) throws SnapshotException {
+		Object value = resolve(object);
+		return value instanceof IObject ? ((IObject) value).getClassSpecificName() : null;
+	}
+
+	private void reportAbsent(IClass clazz) {
+		// Once per class and run, since a class lacks the path in every instance
+		InspectionMetrics metrics = InspectionMetrics.current();
+		if (metrics != null && reported.get(clazz.getObjectId()) != metrics) {
+			reported.put(clazz.getObjectId(), metrics);
+			metrics.fieldAbsent(clazz.getName() + '.' + path);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+
+	private static final class Segment {
+
+		private final String name;
+		private final ConcurrentHashMap<Integer, Integer> indices = new ConcurrentHashMap<>();
+		private volatile CachedIndex last;
+
+		Segment(String name) {
+			this.name = name;
+		}
+
+		Object resolve(IObject object) throws SnapshotException {
+			InspectionMetrics.fieldResolved();
+			if (!(object instanceof IInstance)) {
+				// Class (static) fields and arrays are rare here; fall back to MAT
+				Object value = object.resolveValue(name);
+				return value == null && !hasStaticField(object) ? ABSENT : value;
+			}
+
+			List<Field> fields = ((IInstance) object).getFields();
+			int index = indexOf(object.getClazz(), fields);
+			if (index == NOT_FOUND) {
+				return ABSENT;
+			}
+
+			Object value = fields.get(index).getValue();
+			return value instanceof ObjectReference ? ((ObjectReference) value).getObject() : value;
+		}
+
+		private int indexOf(IClass clazz, List<Field> fields) {
+			// Most paths see a single class, so check the last one before the map.
+			// Class IDs are only unique within a snapshot, so a cached index is
+			// only used if it still names the field.
+			CachedIndex cached = last;
+			if (cached != null && cached.classId == clazz.getObjectId() && isField(fields, cached.index)) {
+				return cached.index;
+			}
+
+			Integer index = indices.get(clazz.getObjectId());
+			if (index == null || !isField(fields, index)) {
+				// Missing fields are not cached, the same ID may be another class next time
+				index = NOT_FOUND;
+				for (int i = 0; i < fields.size(); i++) {
+					if (name.equals(fields.get(i).getName())) {
+						index = i;
+						break;
+					}
+				}
+				if (index == NOT_FOUND) {
+					return NOT_FOUND;
+				}
+				indices.put(clazz.getObjectId(), index);
+			}
+
+			last = new CachedIndex(clazz.getObjectId(), index);
+			return index;
+		}
+
+		private boolean isField(List<Field> fields, int index) {
+			return index < fields.size() && name.equals(fields.get(index).getName());
+		}
+
+		private boolean hasStaticField(IObject object) {
+			if (!(object instanceof IClass)) {
+				return false;
+			}
+
+			for (Field field : ((IClass) object).getStaticFields()) {
+				if (name.equals(field.getName())) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	private static final class CachedIndex {
+
+		private final int classId;
+		private final int index;
+
+		CachedIndex(int classId, int index) {
+			this.classId = classId;
+			this.index = index;
+		}
+
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.IPathsFromGCRootsComputer;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.NamedReference;
+
+/**
+ * Finds and describes what keeps an object alive.
+ * <p>
+ * Every search is a breadth-first walk of the inbound references of the
+ * object, so callers should bound how many objects they search paths for.
+ */
+public final class GCRootPaths {
+
+	private GCRootPaths() {
+	}
+
+	/**
+	 * @return the references to exclude so that only strong paths are found:
+	 *         the {@code referent} of every {@code java.lang.ref.Reference}
+	 *         (weak, soft, phantom and finalizer references)
+	 */
+	public static Map<IClass, Set<String>> strongReferencesOnly(ISnapshot snapshot) throws SnapshotException {
+		Map<IClass, Set<String>> excludes = new HashMap<>();
+		Collection<IClass> references = snapshot.getClassesByName("java.lang.ref.Reference", true);
+		if (references != null) {
+			for (IClass reference : references) {
+				excludes.put(reference, Collections.singleton("referent"));
+			}
+		}
+		return excludes;
+	}
+
+	/**
+	 * @return the shortest path from a GC root to the object, root first (eg:
+	 *         {@code java.lang.Thread @ 0x1 .contextClassLoader -> ...}), or
+	 *         {@code null} if the object is not reachable through the allowed
+	 *         references
+	 */
+	public static String getShortestPath(ISnapshot snapshot, int objectId, Map<IClass, Set<String>> excludes)
+			throws SnapshotException {
+		IPathsFromGCRootsComputer computer = snapshot.getPathsFromGCRoots(objectId, excludes);
+		int[] path = computer.getNextShortestPath();
+		if (path == null || path.length == 0) {
+			return null;
+		}
+
+		// The path starts at the object and ends at the root
+		StringBuilder sb = new StringBuilder();
+		for (int i = path.length - 1; i > 0; i--) {
+			IObject referrer = snapshot.getObject(path[i]);
+			sb.append(referrer.getTechnicalName()).append(' ').append(getFieldName(referrer, path[i - 1]))
+					.append(" -> ");
+		}
+		return sb.append(snapshot.getObject(path[0]).getTechnicalName()).toString();
+	}
+
+	/**
+	 * @return the class and field of the first object found referring to the
+	 *         object (eg: {@code com.example.Cache.entries}, or only the array
+	 *         type for array elements), or {@code null} if nothing refers to it
+	 */
+	public static String getOwner(ISnapshot snapshot, int objectId) throws SnapshotException {
+		int referrerId = getReferrer(snapshot, objectId);
+		return referrerId < 0 ? null : describe(snapshot, snapshot.getObject(referrerId), objectId);
+	}
+
+	/**
+	 * Like {@link #getOwner(ISnapshot, int)}, but looks past arrays and JDK
+	 * classes (eg: the {@code HashSet} holding a {@code HashMap}, or an
+	 * {@code ArrayList} holding an array) for the object of the application
+	 * holding them, at most {@code maxDepth} references away.
+	 *
+	 * @return the first owner outside the JDK, or the first owner found if
+	 *         there is none, or {@code null} if nothing refers to the object
+	 */
+	public static String getApplicationOwner(ISnapshot snapshot, int objectId, int maxDepth)
+			throws SnapshotException {
+		String first = null;
+		int current = objectId;
+		for (int depth = 0; depth < maxDepth; depth++) {
+			int referrerId = getReferrer(snapshot, current);
+			if (referrerId < 0) {
+				break;
+			}
+
+			IObject referrer = snapshot.getObject(referrerId);
+			String owner = describe(snapshot, referrer, current);
+			if (first == null) {
+				first = owner;
+			}
+			String type = referrer instanceof IClass ? ((IClass) referrer).getName() : referrer.getClazz().getName();
+			if (referrer instanceof IClass || (!snapshot.isArray(referrerId) && !isJDK(type))) {
+				return owner;
+			}
+			current = referrerId;
+		}
+		return first;
+	}
+
+	private static boolean isJDK(String type) {
+		return type.startsWith("java.") || type.startsWith("javax.") || type.startsWith("jdk.")
+				|| type.startsWith("sun.");
+	}
+
+	/**
+	 * @return the first object found referring to the object, or {@code -1}
+	 */
+	private static int getReferrer(ISnapshot snapshot, int objectId) throws SnapshotException {
+		for (int referrerId : snapshot.getInboundRefererIds(objectId)) {
+			if (referrerId != objectId) {
+				return referrerId;
+			}
+		}
+		return -1;
+	}
+
+	private static String describe(ISnapshot snapshot, IObject referrer, int objectId) throws SnapshotException {
+		if (referrer instanceof IClass) {
+			// A static field
+			return ((IClass) referrer).getName() + '.' + getFieldName(referrer, objectId);
+		} else if (snapshot.isArray(referrer.getObjectId())) {
+			return referrer.getClazz().getName();
+		}
+		return referrer.getClazz().getName() + '.' + getFieldName(referrer, objectId);
+	}
+
+	private static String getFieldName(IObject referrer, int objectId) throws SnapshotException {
+		for (NamedReference reference : referrer.getOutboundReferences()) {
+			if (reference.getObjectId() == objectId) {
+				return reference.getName();
+			}
+		}
+		return "?";
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.mat.util.IProgressListener;
+import org.eclipse.mat.util.IProgressListener.OperationCanceledException;
+
+/**
+ * The time an inspection run may take before it stops early and reports what
+ * it has found so far.
+ * <p>
+ * A budget is started by {@link AbstractInspection} for the thread running
+ * the inspection, and {@link ParallelScan} hands it to its workers. Object
+ * loops call {@link #checkpoint} every so often to stop when the user cancels
+ * or when the budget runs out.
+ *
+ * @see InspectionSettings#getTimeBudget()
+ */
+public final class InspectionBudget {
+
+	private static final ThreadLocal<InspectionBudget> CURRENT = new ThreadLocal<>();
+
+	private final long deadline;
+	private final boolean limited;
+	private final InspectionBudget previous;
+	private volatile boolean exhausted;
+
+	private InspectionBudget(long millis, InspectionBudget previous) {
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		this.limited = millis > 0;
+		this.previous = previous;
+	}
+
+	/**
+	 * Starts a budget for the calling thread, until {@link #end()}.
+	 *
+	 * @param millis the budget, or 0 for none
+	 */
+	static InspectionBudget start(long millis) {
+		InspectionBudget budget = new InspectionBudget(millis, CURRENT.get());
+		CURRENT.set(budget);
+		return budget;
+	}
+
+	void end() {
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * @return the budget of the calling thread, or {@code null} if it has none
+	 */
+	public static InspectionBudget current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @throws OperationCanceledException if the user canceled the inspection
+	 * @return whether the budget of the calling thread has run out
+	 */
+	public static boolean checkpoint(IProgressListener listener) {
+		return checkpoint(listener, CURRENT.get());
+	}
+
+	static boolean checkpoint(IProgressListener listener, InspectionBudget budget) {
+		if (listener != null && listener.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+		return budget != null && budget.isExhausted();
+	}
+
+	/**
+	 * @return whether the budget has run out; once it has, it stays exhausted
+	 */
+	public boolean isExhausted() {
+		if (!exhausted && limited && System.nanoTime() - deadline > 0) {
+			exhausted = true;
+		}
+		return exhausted;
+	}
+
+	/**
+	 * @return whether any checkpoint found the budget exhausted, ie: whether
+	 *         some work was skipped
+	 */
+	public boolean wasExhausted() {
+		return exhausted;
+	}
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+
+/**
+ * What a single inspection run cost: wall and CPU time, allocations, and how
+ * much of the snapshot it read.
+ * <p>
+ * Metrics are recorded by the thread running the inspection and by any
+ * {@link ParallelScan} worker acting on its behalf, so CPU time and
+ * allocations include the work done in parallel. Work shared by several
+ * inspections, like the {@link SharedScan} pass, is recorded apart under its
+ * own name and left out of the metrics of the inspection that triggered it.
+ * The last metrics of every inspection run against a snapshot are kept for
+ * the snapshot's lifetime.
+ *
+ * @see AbstractInspection
+ * @see InspectionMetricsQuery
+ */
+public final class InspectionMetrics {
+
+	private static final ThreadLocal<InspectionMetrics> CURRENT = new ThreadLocal<>();
+	private static final Map<ISnapshot, Map<String, InspectionMetrics>> RECORDED = new WeakHashMap<>();
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final String inspection;
+	private final LongAdder cpuTime = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+	private final LongAdder objectsVisited = new LongAdder();
+	private final LongAdder fieldsResolved = new LongAdder();
+	private final LongAdder primitiveBytesRead = new LongAdder();
+	private final LongAdder excludedWallTime = new LongAdder();
+	private final Set<String> absentFields = ConcurrentHashMap.newKeySet();
+	private volatile long wallTime;
+
+	private InspectionMetrics(String inspection) {
+		this.inspection = inspection;
+	}
+
+	@FunctionalInterface
+	public interface IMeasuredWork<T> {
+
+		T run() throws Exception;
+
+	}
+
+	@FunctionalInterface
+	interface ISharedWork {
+
+		void run() throws SnapshotException;
+
+	}
+
+	/**
+	 * Runs {@code work} on the calling thread, recording its metrics under the
+	 * given inspection (class) name. If the thread is already recording, the
+	 * work is added to the metrics of the outer run instead.
+	 */
+	public static <T> T record(ISnapshot snapshot, String inspection, IMeasuredWork<T> work) throws Exception {
+		if (CURRENT.get() != null) {
+			return work.run();
+		}
+
+		InspectionMetrics metrics = new InspectionMetrics(inspection);
+		long start = System.nanoTime();
+		try (Scope scope = enter(metrics)) {
+			return work.run();
+		} finally {
+			metrics.wallTime = System.nanoTime() - start - metrics.excludedWallTime.sum();
+			store(snapshot, metrics);
+		}
+	}
+
+	/**
+	 * Runs {@code work} on the calling thread, recording its metrics under the
+	 * given name even if the thread is already recording, in which case the
+	 * time and allocations of the calling thread are taken out of the outer
+	 * run. Workers forked by {@code work} record under the given name too.
+	 */
+	static void recordApart(ISnapshot snapshot, String name, ISharedWork work) throws SnapshotException {
+		InspectionMetrics outer = CURRENT.get();
+		InspectionMetrics metrics = new InspectionMetrics(name);
+		long start = System.nanoTime();
+		long cpuTime = threadCpuTime();
+		long allocatedBytes = threadAllocatedBytes();
+		try (Scope scope = enter(metrics)) {
+			work.run();
+		} finally {
+			metrics.wallTime = System.nanoTime() - start;
+			if (outer != null) {
+				outer.excludedWallTime.add(metrics.wallTime);
+				outer.cpuTime.add(cpuTime - threadCpuTime());
+				outer.allocatedBytes.add(allocatedBytes - threadAllocatedBytes());
+			}
+			store(snapshot, metrics);
+		}
+	}
+
+	private static void store(ISnapshot snapshot, InspectionMetrics metrics) {
+		synchronized (RECORDED) {
+			RECORDED.computeIfAbsent(snapshot, s -> new LinkedHashMap<>()).put(metrics.inspection, metrics);
+		}
+	}
+
+	/**
+	 * @return the metrics being recorded by the calling thread, or {@code null}
+	 */
+	public static InspectionMetrics current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return the last metrics of every inspection run against the snapshot,
+	 *         in the order they first ran
+	 */
+	public static List<InspectionMetrics> getRecorded(ISnapshot snapshot) {
+		synchronized (RECORDED) {
+			Map<String, InspectionMetrics> recorded = RECORDED.get(snapshot);
+			return recorded == null ? new ArrayList<>() : new ArrayList<>(recorded.values());
+		}
+	}
+
+	/**
+	 * @return the last metrics recorded under the given (inspection) name
+	 *         against the snapshot, or {@code null} if there are none
+	 */
+	public static InspectionMetrics getRecorded(ISnapshot snapshot, String name) {
+		synchronized (RECORDED) {
+			Map<String, InspectionMetrics> recorded = RECORDED.get(snapshot);
+			return recorded == null ? null : recorded.get(name);
+		}
+	}
+
+	/**
+	 * Makes the calling thread record into {@code metrics} until the returned
+	 * scope is closed. Does nothing if {@code metrics} is {@code null} or
+	 * already being recorded by this thread.
+	 */
+	static Scope enter(InspectionMetrics metrics) {
+		InspectionMetrics previous = CURRENT.get();
+		if (metrics == null || metrics == previous) {
+			return Scope.NONE;
+		}
+
+		CURRENT.set(metrics);
+		return new Scope(metrics, previous);
+	}
+
+	static void objectsVisited(long count) {
+		InspectionMetrics metrics = CURRENT.get();
+		if (metrics != null) {
+			metrics.objectsVisited.add(count);
+		}
+	}
+
+	static void fieldResolved() {
+		InspectionMetrics metrics = CURRENT.get();
+		if (metrics != null) {
+			metrics.fieldsResolved.increment();
+		}
+	}
+
+	void fieldAbsent(String field) {
+		absentFields.add(field);
+	}
+
+	static void primitiveBytesRead(long count) {
+		InspectionMetrics metrics = CURRENT.get();
+		if (metrics != null) {
+			metrics.primitiveBytesRead.add(count);
+		}
+	}
+
+	public String getInspection() {
+		return inspection;
+	}
+
+	/**
+	 * @return the wall time in nanoseconds
+	 */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	/**
+	 * @return the CPU time in nanoseconds, summed over every thread that worked
+	 *         on the inspection, or 0 if the JVM does not measure it
+	 */
+	public long getCpuTime() {
+		return cpuTime.sum();
+	}
+
+	/**
+	 * @return the bytes allocated by every thread that worked on the
+	 *         inspection, or 0 if the JVM does not measure them
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	public long getObjectsVisited() {
+		return objectsVisited.sum();
+	}
+
+	public long getFieldsResolved() {
+		return fieldsResolved.sum();
+	}
+
+	public long getPrimitiveBytesRead() {
+		return primitiveBytesRead.sum();
+	}
+
+	/**
+	 * @return the fields {@link FieldPath}s looked for in classes that lack
+	 *         them (eg: {@code org.apache.coyote.Request.startTime}), usually
+	 *         because the snapshot holds another version of the library than
+	 *         the inspection knows, in order
+	 */
+	public List<String> getAbsentFields() {
+		List<String> fields = new ArrayList<>(absentFields);
+		Collections.sort(fields);
+		return fields;
+	}
+
+	@Override
+	public String toString() {
+		return inspection + ": " + wallTime / 1_000_000 + " ms wall, " + getCpuTime() / 1_000_000 + " ms CPU, "
+				+ getObjectsVisited() + " objects, " + getFieldsResolved() + " fields, " + getPrimitiveBytesRead()
+				+ " array bytes read, " + getAllocatedBytes() + " bytes allocated";
+	}
+
+	private static long threadCpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+	}
+
+	private static long threadAllocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			long allocated = ((com.sun.management.ThreadMXBean) THREADS)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+			return Math.max(0, allocated);
+		}
+		return 0;
+	}
+
+	static final class Scope implements AutoCloseable {
+
+		private static final Scope NONE = new Scope(null, null);
+
+		private final InspectionMetrics metrics;
+		private final InspectionMetrics previous;
+		private final long cpuTime;
+		private final long allocatedBytes;
+
+		private Scope(InspectionMetrics metrics, InspectionMetrics previous) {
+			this.metrics = metrics;
+			this.previous = previous;
+			this.cpuTime = metrics == null ? 0 : threadCpuTime();
+			this.allocatedBytes = metrics == null ? 0 : threadAllocatedBytes();
+		}
+
+		@Override
+		public void close() {
+			if (metrics == null) {
+				return;
+			}
+
+			metrics.cpuTime.add(threadCpuTime() - cpuTime);
+			metrics.allocatedBytes.add(threadAllocatedBytes() - allocatedBytes);
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+
+	}
+
+}
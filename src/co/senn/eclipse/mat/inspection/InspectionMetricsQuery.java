@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import org.eclipse.mat.query.IQuery;
+import org.eclipse.mat.query.IResult;
+import org.eclipse.mat.query.annotations.Argument;
+import org.eclipse.mat.query.annotations.Category;
+import org.eclipse.mat.query.annotations.CommandName;
+import org.eclipse.mat.query.annotations.Help;
+import org.eclipse.mat.query.annotations.Name;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.util.IProgressListener;
+
+/**
+ * Lists what the last run of every inspection against the snapshot cost, to
+ * decide which inspections are worth running by default on large dumps.
+ */
+@CommandName("inspection_metrics")
+@Name("Inspection Metrics")
+@Category("Inspections")
+@Help("Lists the wall time, CPU time, allocations and amount of the snapshot read by the last run of every inspection.")
+public class InspectionMetricsQuery implements IQuery {
+
+	@Argument
+	public ISnapshot snapshot;
+
+	@Override
+	public IResult execute(IProgressListener listener) throws Exception {
+		return new InspectionMetricsTable(InspectionMetrics.getRecorded(snapshot));
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+/**
+ * Inspection metrics, one row per inspection.
+ */
+final class InspectionMetricsTable implements IResultTable {
+
+	// @formatter:off
+	private static final Column[] COLUMNS = {
+			new Column("Inspection"),
+			new Column("Wall Time (ms)", Long.class).sorting(Column.SortDirection.DESC),
+			new Column("CPU Time (ms)", Long.class),
+			new Column("Allocated Bytes", Long.class),
+			new Column("Objects Visited", Long.class),
+			new Column("Fields Resolved", Long.class),
+			new Column("Primitive Bytes Read", Long.class),
+			new Column("Absent Fields")
+	};
+	// @formatter:on
+
+	private final List<InspectionMetrics> rows;
+
+	InspectionMetricsTable(List<InspectionMetrics> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		InspectionMetrics metrics = (InspectionMetrics) row;
+		switch (columnIndex) {
+		case 0:
+			return InspectionRegistry.getName(metrics.getInspection());
+		case 1:
+			return metrics.getWallTime() / 1_000_000;
+		case 2:
+			return metrics.getCpuTime() / 1_000_000;
+		case 3:
+			return metrics.getAllocatedBytes();
+		case 4:
+			return metrics.getObjectsVisited();
+		case 5:
+			return metrics.getFieldsResolved();
+		case 6:
+			return metrics.getPrimitiveBytesRead();
+		case 7:
+			return String.join(", ", metrics.getAbsentFields());
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return null;
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExtensionRegistry;
+import org.eclipse.core.runtime.Platform;
+
+/**
+ * Looks up how inspections are declared to the inspection framework (see
+ * {@code plugin.xml}) by their implementation class.
+ */
+public final class InspectionRegistry {
+
+	public static final String TECHNOLOGY_EXTENSION_POINT = "co.senn.eclipse.mat.inspection.technology";
+	public static final String INSPECTION_EXTENSION_POINT = "co.senn.eclipse.mat.inspection.inspection";
+
+	private static Map<String, IConfigurationElement> inspections;
+
+	private InspectionRegistry() {
+	}
+
+	/**
+	 * @return the ID of the inspection, or {@code null} if it is not
+	 *         registered (or the platform is not running)
+	 */
+	public static String getId(String implementation) {
+		IConfigurationElement element = getInspections().get(implementation);
+		return element == null ? null : element.getAttribute("id");
+	}
+
+	/**
+	 * @return the name of the inspection, or its simple class name if it is not
+	 *         registered
+	 */
+	public static String getName(String implementation) {
+		IConfigurationElement element = getInspections().get(implementation);
+		return element == null ? implementation.substring(implementation.lastIndexOf('.') + 1)
+				: element.getAttribute("name");
+	}
+
+	private static synchronized Map<String, IConfigurationElement> getInspections() {
+		if (inspections == null) {
+			inspections = new HashMap<>();
+			IExtensionRegistry registry = Platform.getExtensionRegistry();
+			if (registry != null) {
+				for (IConfigurationElement element : registry.getConfigurationElementsFor(INSPECTION_EXTENSION_POINT)) {
+					inspections.put(element.getAttribute("impl"), element);
+				}
+			}
+		}
+		return inspections;
+	}
+
+}
@@ -15,6 +15,9 @@
  */
 package co.senn.eclipse.mat.inspection;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.eclipse.mat.query.IResult;
 
 import co.senn.eclipse.mat.inspection.api.IInspectionResult;
@@ -22,10 +25,16 @@ import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
 
 public final class InspectionResult implements IInspectionResult {
 
+	private static final int ABSENT_FIELDS_SHOWN = 3;
+
 	private final IResult result;
 	private final String resultSummary;
 	private final InspectionResultSeverity severity;
 
+	private InspectionMetrics metrics;
+	private boolean incomplete;
+	private List<String> absentFields = Collections.emptyList();
+
 	public InspectionResult(IResult result, String resultSummary, InspectionResultSeverity severity) {
 		this.result = result;
 		this.resultSummary = resultSummary;
@@ -39,7 +48,19 @@ public final class InspectionResult implements IInspectionResult {
 
 	@Override
 	public String getResultSummary() {
-		return resultSummary;
+		StringBuilder sb = new StringBuilder(resultSummary);
+		if (incomplete) {
+			sb.append(" (partial: time budget exceeded)");
+		}
+		if (!absentFields.isEmpty()) {
+			sb.append(" (fields not found, this version may not be supported: ");
+			sb.append(String.join(", ", absentFields.subList(0, Math.min(absentFields.size(), ABSENT_FIELDS_SHOWN))));
+			if (absentFields.size() > ABSENT_FIELDS_SHOWN) {
+				sb.append(" and ").append(absentFields.size() - ABSENT_FIELDS_SHOWN).append(" more");
+			}
+			sb.append(')');
+		}
+		return sb.toString();
 	}
 
 	@Override
@@ -47,4 +68,40 @@ public final class InspectionResult implements IInspectionResult {
 		return severity;
 	}
 
+	/**
+	 * @return what the run that produced this result cost, or {@code null} if
+	 *         it was not measured
+	 */
+	public InspectionMetrics getMetrics() {
+		return metrics;
+	}
+
+	void setMetrics(InspectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return whether the inspection ran out of time and this result only
+	 *         covers part of the snapshot
+	 */
+	public boolean isIncomplete() {
+		return incomplete;
+	}
+
+	void setIncomplete(boolean incomplete) {
+		this.incomplete = incomplete;
+	}
+
+	/**
+	 * @return the fields the inspection looked for but did not find
+	 * @see InspectionMetrics#getAbsentFields()
+	 */
+	public List<String> getAbsentFields() {
+		return absentFields;
+	}
+
+	void setAbsentFields(List<String> absentFields) {
+		this.absentFields = absentFields;
+	}
+
 }
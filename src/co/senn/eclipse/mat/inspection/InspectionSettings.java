@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+/**
+ * Tuning knobs shared by the inspections, read from system properties (eg:
+ * {@code -Dco.senn.eclipse.mat.inspection.parallel=false} in
+ * {@code MemoryAnalyzer.ini}).
+ */
+public final class InspectionSettings {
+
+	private static final String PREFIX = "co.senn.eclipse.mat.inspection.";
+
+	public static final String RESULT_CACHE = PREFIX + "resultCache";
+
+	private InspectionSettings() {
+	}
+
+	/**
+	 * @return whether per-object work may be spread across a fork-join pool
+	 *         (default: {@code true})
+	 */
+	public static boolean isParallel() {
+		return Boolean.parseBoolean(System.getProperty(PREFIX + "parallel", "true"));
+	}
+
+	/**
+	 * @return the number of objects a single fork-join task works through
+	 *         before it stops splitting (default: 4096)
+	 */
+	public static int getPartitionSize() {
+		return Math.max(1, Integer.getInteger(PREFIX + "partitionSize", 4096));
+	}
+
+	/**
+	 * @return the maximum number of rows of a grouped result table, beyond
+	 *         which the smallest groups are folded into a single row (default:
+	 *         1000)
+	 */
+	public static int getMaxRows() {
+		return Math.max(1, Integer.getInteger(PREFIX + "maxRows", 1000));
+	}
+
+	/**
+	 * @return the number of object IDs kept per row of a grouped result
+	 *         table, as the row's context and to estimate its retained heap
+	 *         (default: 1000)
+	 */
+	public static int getSampleSize() {
+		return Math.max(1, Integer.getInteger(PREFIX + "sampleSize", 1000));
+	}
+
+	/**
+	 * @return the number of rows at the top of a result table whose retained
+	 *         heap is computed up front; the remaining rows can be calculated
+	 *         on demand (default: 25)
+	 */
+	public static int getRetainedHeapRows() {
+		return Math.max(0, Integer.getInteger(PREFIX + "retainedHeapRows", 25));
+	}
+
+	/**
+	 * @return whether the retained heap of HTTP request groups is computed at
+	 *         all (default: true); it takes a dominator tree lookup per sampled
+	 *         request, which can dominate the cost of the request inspections
+	 */
+	public static boolean isRequestRetainedHeap() {
+		return Boolean.parseBoolean(System.getProperty(PREFIX + "requestRetainedHeap", "true"));
+	}
+
+	/**
+	 * @return the number of rows at the top of a result table for which the
+	 *         shortest path from the GC roots is searched (default: 10)
+	 */
+	public static int getGCRootPathRows() {
+		return Math.max(0, Integer.getInteger(PREFIX + "gcRootPathRows", 10));
+	}
+
+	/**
+	 * @return the time in milliseconds an inspection may run before it stops
+	 *         and returns a partial result, or 0 for no limit (default: 0)
+	 */
+	public static long getTimeBudget() {
+		return Math.max(0, Long.getLong(PREFIX + "timeBudget", 0));
+	}
+
+	/**
+	 * @return the retained heap in bytes above which an open JDBC result set
+	 *         is reported as too large (default: 10 MB)
+	 */
+	public static long getResultSetThreshold() {
+		return Math.max(0, Long.getLong(PREFIX + "resultSetThreshold", 10L * 1024 * 1024));
+	}
+
+	/**
+	 * @return whether inspection results are kept on disk next to the
+	 *         snapshot's index files and reused when it is reopened (default:
+	 *         {@code true})
+	 */
+	public static boolean isResultCache() {
+		return Boolean.parseBoolean(System.getProperty(RESULT_CACHE, "true"));
+	}
+
+	/**
+	 * @return the value of every setting that can change what an inspection
+	 *         returns, as a single string (see {@link ResultCache})
+	 */
+	static String getFingerprint() {
+		return "maxRows=" + getMaxRows() + ",sampleSize=" + getSampleSize() + ",retainedHeapRows="
+				+ getRetainedHeapRows() + ",requestRetainedHeap=" + isRequestRetainedHeap() + ",gcRootPathRows="
+				+ getGCRootPathRows() + ",resultSetThreshold=" + getResultSetThreshold() + ",partitionSize="
+				+ getPartitionSize() + ",parallel=" + isParallel() + ",timeBudget=" + getTimeBudget();
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+/**
+ * A minimal open-addressing map from {@code long} keys to a count and a sum,
+ * without boxing. Memory grows with the number of distinct keys only, which
+ * makes it suitable for tallying content hashes of many objects.
+ * <p>
+ * {@code 0} is used to mark empty slots and cannot be added.
+ */
+public final class LongCountMap {
+
+	@FunctionalInterface
+	public interface IEntryVisitor {
+
+		void visit(long key, int count, long sum);
+
+	}
+
+	private long[] keys = new long[16];
+	private int[] counts = new int[16];
+	private long[] sums = new long[16];
+	private int mask = keys.length - 1;
+	private int size;
+
+	/**
+	 * Counts one more occurrence of {@code key} and adds {@code value} to its
+	 * sum.
+	 */
+	public void add(long key, long value) {
+		add(key, 1, value);
+	}
+
+	private void add(long key, int count, long sum) {
+		if (key == 0) {
+			throw new IllegalArgumentException("0 cannot be added");
+		}
+
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+
+		int slot = slot(key);
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+
+		if (keys[slot] == 0) {
+			keys[slot] = key;
+			size++;
+		}
+		counts[slot] += count;
+		sums[slot] += sum;
+	}
+
+	/**
+	 * @return the number of occurrences of {@code key}
+	 */
+	public int getCount(long key) {
+		int slot = slot(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return counts[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void forEach(IEntryVisitor visitor) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				visitor.visit(keys[i], counts[i], sums[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds the counts and sums of {@code other} to this map.
+	 */
+	public LongCountMap merge(LongCountMap other) {
+		other.forEach(this::add);
+		return this;
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		long[] oldSums = sums;
+		keys = new long[oldKeys.length * 2];
+		counts = new int[keys.length];
+		sums = new long[keys.length];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = slot(oldKeys[i]);
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+				sums[slot] = oldSums[i];
+			}
+		}
+	}
+
+}
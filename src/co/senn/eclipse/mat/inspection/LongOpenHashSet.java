@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing set of {@code long}s, meant to be
+ * {@linkplain #reset reset} and reused for many short-lived checks (eg: one
+ * per collection) without boxing or reallocating.
+ * <p>
+ * {@code 0} is used to mark empty slots and cannot be added. Object addresses
+ * are never {@code 0}, since MAT uses {@code 0} for {@code null} references.
+ */
+public final class LongOpenHashSet {
+
+	private long[] keys = new long[16];
+	private int mask = keys.length - 1;
+	private int size;
+
+	/**
+	 * Empties the set and sizes it for {@code expected} keys.
+	 */
+	public void reset(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(8, expected) * 2 - 1) << 1;
+		if (keys.length < capacity || keys.length > capacity * 8) {
+			keys = new long[capacity];
+		} else {
+			Arrays.fill(keys, 0L);
+		}
+		mask = keys.length - 1;
+		size = 0;
+	}
+
+	/**
+	 * @return {@code false} if the key was already present
+	 */
+	public boolean add(long key) {
+		if (key == 0) {
+			throw new IllegalArgumentException("0 cannot be added");
+		}
+
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+
+		int slot = slot(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		size++;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void grow() {
+		long[] old = keys;
+		keys = new long[old.length * 2];
+		mask = keys.length - 1;
+		for (long key : old) {
+			if (key != 0) {
+				int slot = slot(key);
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+			}
+		}
+	}
+
+}
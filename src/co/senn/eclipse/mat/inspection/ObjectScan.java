@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayInt;
+import org.eclipse.mat.collect.HashMapIntObject;
+import org.eclipse.mat.collect.SetInt;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.util.IProgressListener;
+
+/**
+ * A single pass over the instances of a set of types.
+ * <p>
+ * Visitors are registered against a type name (subclasses included). When the
+ * scan is run, every registered type is resolved to its class tree once and
+ * each object is loaded once, then handed to every visitor interested in any
+ * of its types. Types that are only {@linkplain #collect collected} are never
+ * loaded.
+ * <p>
+ * The scan can be canceled through its progress listener, but is not subject
+ * to an inspection's time budget, since what it collects is shared.
+ *
+ * @see SharedScan
+ */
+public final class ObjectScan {
+
+	private final Map<String, List<IObjectVisitor>> visitorsByType = new LinkedHashMap<>();
+	private final Map<String, List<ArrayInt>> collectorsByType = new LinkedHashMap<>();
+
+	public ObjectScan register(String type, IObjectVisitor visitor) {
+		visitorsByType.computeIfAbsent(type, t -> new ArrayList<>()).add(visitor);
+		return this;
+	}
+
+	/**
+	 * Adds the IDs of the objects of the given type to {@code objectIds}
+	 * without loading them, for work that is better done later (eg: in
+	 * parallel, see {@link ParallelScan}).
+	 */
+	public ObjectScan collect(String type, ArrayInt objectIds) {
+		collectorsByType.computeIfAbsent(type, t -> new ArrayList<>()).add(objectIds);
+		return this;
+	}
+
+	/**
+	 * Reads the IDs of the objects of the given types (subclasses included)
+	 * from their classes, for work on types too common to keep the IDs of for
+	 * as long as the snapshot is open (see {@link SharedScan}).
+	 */
+	public static int[] getObjectIds(ISnapshot snapshot, String... types) throws SnapshotException {
+		SetInt classes = new SetInt();
+		List<int[]> objectIds = new ArrayList<>();
+		int length = 0;
+		for (String type : types) {
+			Collection<IClass> found = snapshot.getClassesByName(type, true);
+			if (found == null) {
+				continue;
+			}
+
+			for (IClass clazz : found) {
+				if (classes.add(clazz.getObjectId())) {
+					int[] ids = clazz.getObjectIds();
+					objectIds.add(ids);
+					length += ids.length;
+				}
+			}
+		}
+
+		int[] all = new int[length];
+		int offset = 0;
+		for (int[] ids : objectIds) {
+			System.arraycopy(ids, 0, all, offset, ids.length);
+			offset += ids.length;
+		}
+		return all;
+	}
+
+	public boolean isEmpty() {
+		return visitorsByType.isEmpty() && collectorsByType.isEmpty();
+	}
+
+	/**
+	 * Runs the scan.
+	 *
+	 * @return the number of objects visited
+	 */
+	public long run(ISnapshot snapshot, IProgressListener listener) throws SnapshotException {
+		HashMapIntObject<List<IObjectVisitor>> visitorsByClass = new HashMapIntObject<>();
+		List<IClass> classes = new ArrayList<>();
+		for (Map.Entry<String, List<IObjectVisitor>> entry : visitorsByType.entrySet()) {
+			Collection<IClass> types = snapshot.getClassesByName(entry.getKey(), true);
+			if (types == null) {
+				continue;
+			}
+
+			for (IClass clazz : types) {
+				List<IObjectVisitor> visitors = visitorsByClass.get(clazz.getObjectId());
+				if (visitors == null) {
+					visitors = new ArrayList<>();
+					visitorsByClass.put(clazz.getObjectId(), visitors);
+					classes.add(clazz);
+				}
+				for (IObjectVisitor visitor : entry.getValue()) {
+					if (!visitors.contains(visitor)) {
+						visitors.add(visitor);
+					}
+				}
+			}
+		}
+
+		HashMapIntObject<List<ArrayInt>> collectorsByClass = new HashMapIntObject<>();
+		for (Map.Entry<String, List<ArrayInt>> entry : collectorsByType.entrySet()) {
+			Collection<IClass> types = snapshot.getClassesByName(entry.getKey(), true);
+			if (types == null) {
+				continue;
+			}
+
+			for (IClass clazz : types) {
+				List<ArrayInt> collectors = collectorsByClass.get(clazz.getObjectId());
+				if (collectors == null) {
+					collectors = new ArrayList<>();
+					collectorsByClass.put(clazz.getObjectId(), collectors);
+					if (!visitorsByClass.containsKey(clazz.getObjectId())) {
+						classes.add(clazz);
+					}
+				}
+				for (ArrayInt collector : entry.getValue()) {
+					if (!collectors.contains(collector)) {
+						collectors.add(collector);
+					}
+				}
+			}
+		}
+
+		long visited = 0;
+		long loaded = 0;
+		for (IClass clazz : classes) {
+			int[] objectIds = clazz.getObjectIds();
+			List<ArrayInt> collectors = collectorsByClass.get(clazz.getObjectId());
+			if (collectors != null) {
+				for (ArrayInt collector : collectors) {
+					collector.addAll(objectIds);
+				}
+			}
+
+			List<IObjectVisitor> visitors = visitorsByClass.get(clazz.getObjectId());
+			if (visitors == null) {
+				visited += objectIds.length;
+				continue;
+			}
+
+			listener.subTask("Scanning " + clazz.getName());
+			for (int i = 0; i < objectIds.length; i++) {
+				// Aggregates outlive the inspection, so they are never left partial
+				if (i % ParallelScan.CHECK_INTERVAL == 0) {
+					InspectionBudget.checkpoint(listener, null);
+				}
+
+				IObject object = snapshot.getObject(objectIds[i]);
+				for (IObjectVisitor visitor : visitors) {
+					visitor.visit(object);
+				}
+			}
+			visited += objectIds.length;
+			loaded += objectIds.length;
+		}
+
+		// Collected objects are counted when they are worked through
+		InspectionMetrics.objectsVisited(loaded);
+		return visited;
+	}
+
+}
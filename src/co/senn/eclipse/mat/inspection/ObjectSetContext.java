@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import org.eclipse.mat.query.IContextObjectSet;
+
+/**
+ * The context of a result row that stands for a group of objects, which lets
+ * MAT act on the whole group (eg: calculate its retained size) from the UI.
+ */
+public final class ObjectSetContext implements IContextObjectSet {
+
+	private final int[] objectIds;
+
+	public ObjectSetContext(int[] objectIds) {
+		this.objectIds = objectIds;
+	}
+
+	@Override
+	public int getObjectId() {
+		return objectIds.length > 0 ? objectIds[0] : -1;
+	}
+
+	@Override
+	public int[] getObjectIds() {
+		return objectIds;
+	}
+
+	@Override
+	public String getOQL() {
+		return null;
+	}
+
+}
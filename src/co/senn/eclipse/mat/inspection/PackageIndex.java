@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
+
+/**
+ * The packages of the classes loaded in a snapshot, as a trie of package name
+ * segments built once per snapshot.
+ * <p>
+ * Each node counts the classes and live instances of its package and all of
+ * its subpackages, so both questions are answered in O(package depth):
+ * whether a technology is present at all, and whether it has anything on the
+ * heap worth inspecting.
+ */
+public final class PackageIndex {
+
+	private static final Map<ISnapshot, PackageIndex> INDEXES = new WeakHashMap<>();
+
+	private final Node root = new Node();
+
+	private PackageIndex() {
+	}
+
+	public static PackageIndex get(ISnapshot snapshot) throws SnapshotException {
+		synchronized (INDEXES) {
+			PackageIndex index = INDEXES.get(snapshot);
+			if (index == null) {
+				index = build(snapshot);
+				INDEXES.put(snapshot, index);
+			}
+			return index;
+		}
+	}
+
+	private static PackageIndex build(ISnapshot snapshot) throws SnapshotException {
+		PackageIndex index = new PackageIndex();
+		for (IClass clazz : snapshot.getClasses()) {
+			// Arrays are counted with their component type's package
+			String name = clazz.getName();
+			int brackets = name.indexOf('[');
+			if (brackets >= 0) {
+				name = name.substring(0, brackets);
+			}
+			index.add(name, clazz.getNumberOfObjects());
+		}
+		return index;
+	}
+
+	private void add(String className, long instances) {
+		Node node = root;
+		node.classes++;
+		node.instances += instances;
+
+		int from = 0;
+		int dot;
+		while ((dot = className.indexOf('.', from)) >= 0) {
+			node = node.children.computeIfAbsent(className.substring(from, dot), s -> new Node());
+			node.classes++;
+			node.instances += instances;
+			from = dot + 1;
+		}
+	}
+
+	/**
+	 * @param packageName a package name, eg: {@code org.apache.tomcat}
+	 * @return whether any class of the package or its subpackages is loaded
+	 */
+	public boolean isPresent(String packageName) {
+		Node node = find(packageName);
+		return node != null && node.classes > 0;
+	}
+
+	/**
+	 * @return the number of live instances of the classes of the package and
+	 *         its subpackages
+	 */
+	public long getInstanceCount(String packageName) {
+		Node node = find(packageName);
+		return node == null ? 0 : node.instances;
+	}
+
+	public boolean hasInstances(String packageName) {
+		return getInstanceCount(packageName) > 0;
+	}
+
+	private Node find(String packageName) {
+		Node node = root;
+		int from = 0;
+		while (node != null && from <= packageName.length()) {
+			int dot = packageName.indexOf('.', from);
+			int to = dot < 0 ? packageName.length() : dot;
+			node = node.children.get(packageName.substring(from, to));
+			from = to + 1;
+		}
+		return node;
+	}
+
+	private static final class Node {
+
+		private final Map<String, Node> children = new HashMap<>(4);
+		private int classes;
+		private long instances;
+
+	}
+
+}
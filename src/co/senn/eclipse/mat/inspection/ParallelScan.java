@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.util.IProgressListener;
+
+/**
+ * Works through an array of object IDs, either on the calling thread or
+ * split into partitions on the common fork-join pool.
+ * <p>
+ * Every partition fills its own partial result, and partials are merged
+ * left-to-right, so a merge function that keeps the left-hand value on
+ * conflicts produces the same result in both modes. Partitions may also have
+ * their own scratch state (eg: a decoder and its buffers), which is reused for
+ * every object of the partition and dropped once it is done.
+ * <p>
+ * Progress is reported to the listener as one unit of work per object, and
+ * every {@value #CHECK_INTERVAL} objects each partition checks whether the
+ * inspection was canceled or ran out of {@linkplain InspectionBudget time}.
+ * Once out of time, partitions stop and the partial results gathered so far
+ * are merged and returned.
+ *
+ * @see InspectionSettings#isParallel()
+ */
+public final class ParallelScan {
+
+	static final int CHECK_INTERVAL = 1024;
+
+	private ParallelScan() {
+	}
+
+	@FunctionalInterface
+	public interface IPartitionVisitor<P> {
+
+		void visit(P partial, int objectId) throws SnapshotException;
+
+	}
+
+	@FunctionalInterface
+	public interface IScratchVisitor<P, S> {
+
+		void visit(P partial, S scratch, int objectId) throws SnapshotException;
+
+	}
+
+	/**
+	 * Like {@link #reduce(int[], Supplier, IPartitionVisitor, BinaryOperator,
+	 * IProgressListener)}, with one scratch state per partition.
+	 */
+	public static <P, S> P reduce(int[] objectIds, Supplier<P> partials, Supplier<S> scratches,
+			IScratchVisitor<P, S> visitor, BinaryOperator<P> merger, IProgressListener listener)
+			throws SnapshotException {
+		// @formatter:off
+		return reduce(objectIds,
+				() -> new Partition<>(partials.get(), scratches.get()),
+				(partition, objectId) -> visitor.visit(partition.partial, partition.scratch, objectId),
+				(left, right) -> new Partition<>(merger.apply(left.partial, right.partial), null),
+				listener).partial;
+		// @formatter:on
+	}
+
+	public static <P> P reduce(int[] objectIds, Supplier<P> partials, IPartitionVisitor<P> visitor,
+			BinaryOperator<P> merger, IProgressListener listener) throws SnapshotException {
+		InspectionBudget budget = InspectionBudget.current();
+		listener.beginTask("Inspecting " + objectIds.length + " objects", objectIds.length);
+		try {
+			int partitionSize = InspectionSettings.getPartitionSize();
+			if (!InspectionSettings.isParallel() || objectIds.length <= partitionSize) {
+				P partial = partials.get();
+				visit(objectIds, 0, objectIds.length, partial, visitor, listener, budget);
+				return partial;
+			}
+
+			try {
+				return ForkJoinPool.commonPool().invoke(new PartitionTask<>(objectIds, 0, objectIds.length,
+						partitionSize, partials, visitor, merger, listener, budget, InspectionMetrics.current()));
+			} catch (PartitionException e) {
+				throw e.getCause();
+			}
+		} finally {
+			listener.done();
+		}
+	}
+
+	private static <P> void visit(int[] objectIds, int from, int to, P partial, IPartitionVisitor<P> visitor,
+			IProgressListener listener, InspectionBudget budget) throws SnapshotException {
+		int i = from;
+		while (i < to && !InspectionBudget.checkpoint(listener, budget)) {
+			int start = i;
+			int end = Math.min(to, i + CHECK_INTERVAL);
+			for (; i < end; i++) {
+				visitor.visit(partial, objectIds[i]);
+			}
+
+			// Listeners are not required to be thread-safe
+			synchronized (listener) {
+				listener.worked(end - start);
+			}
+		}
+		InspectionMetrics.objectsVisited(i - from);
+	}
+
+	private static final class Partition<P, S> {
+
+		private final P partial;
+		private final S scratch;
+
+		Partition(P partial, S scratch) {
+			this.partial = partial;
+			this.scratch = scratch;
+		}
+
+	}
+
+	private static final class PartitionTask<P> extends RecursiveTask<P> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] objectIds;
+		private final int from;
+		private final int to;
+		private final int partitionSize;
+		private final Supplier<P> partials;
+		private final IPartitionVisitor<P> visitor;
+		private final BinaryOperator<P> merger;
+		private final IProgressListener listener;
+		private final InspectionBudget budget;
+		private final InspectionMetrics metrics;
+
+		PartitionTask(int[] objectIds, int from, int to, int partitionSize, Supplier<P> partials,
+				IPartitionVisitor<P> visitor, BinaryOperator<P> merger, IProgressListener listener,
+				InspectionBudget budget, InspectionMetrics metrics) {
+			this.objectIds = objectIds;
+			this.from = from;
+			this.to = to;
+			this.partitionSize = partitionSize;
+			this.partials = partials;
+			this.visitor = visitor;
+			this.merger = merger;
+			this.listener = listener;
+			this.budget = budget;
+			this.metrics = metrics;
+		}
+
+		@Override
+		protected P compute() {
+			// Workers record on behalf of the inspection that forked them
+			try (InspectionMetrics.Scope scope = InspectionMetrics.enter(metrics)) {
+				return split();
+			}
+		}
+
+		private P split() {
+			if (to - from <= partitionSize) {
+				P partial = partials.get();
+				try {
+					visit(objectIds, from, to, partial, visitor, listener, budget);
+				} catch (SnapshotException e) {
+					throw new PartitionException(e);
+				}
+				return partial;
+			}
+
+			int middle = (from + to) >>> 1;
+			PartitionTask<P> left = new PartitionTask<>(objectIds, from, middle, partitionSize, partials, visitor,
+					merger, listener, budget, metrics);
+			PartitionTask<P> right = new PartitionTask<>(objectIds, middle, to, partitionSize, partials, visitor,
+					merger, listener, budget, metrics);
+			right.fork();
+			P leftResult = left.compute();
+			return merger.apply(leftResult, right.join());
+		}
+
+	}
+
+	private static final class PartitionException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		PartitionException(SnapshotException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized SnapshotException getCause() {
+			return (SnapshotException) super.getCause();
+		}
+
+	}
+
+}
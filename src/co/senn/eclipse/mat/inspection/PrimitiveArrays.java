@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IPrimitiveArray;
+
+/**
+ * Reads slices of primitive arrays without copying the whole array out of the
+ * dump.
+ */
+public final class PrimitiveArrays {
+
+	private PrimitiveArrays() {
+	}
+
+	/**
+	 * @return the bytes of {@code array} in {@code [start, end)}, clamped to
+	 *         the bounds of the array, or {@code null} if {@code array} is not
+	 *         a {@code byte[]}
+	 */
+	public static byte[] getBytes(IObject array, int start, int end) throws SnapshotException {
+		Object values = getValues(array, IObject.Type.BYTE, start, end);
+		return values instanceof byte[] ? (byte[]) values : null;
+	}
+
+	/**
+	 * @return the characters of {@code array} in {@code [start, end)}, clamped
+	 *         to the bounds of the array, or {@code null} if {@code array} is
+	 *         not a {@code char[]}
+	 */
+	public static char[] getChars(IObject array, int start, int end) throws SnapshotException {
+		Object values = getValues(array, IObject.Type.CHAR, start, end);
+		return values instanceof char[] ? (char[]) values : null;
+	}
+
+	private static Object getValues(IObject array, int type, int start, int end) {
+		if (!(array instanceof IPrimitiveArray) || ((IPrimitiveArray) array).getType() != type) {
+			return null;
+		}
+
+		IPrimitiveArray primitiveArray = (IPrimitiveArray) array;
+		int from = Math.max(0, start);
+		int to = Math.min(primitiveArray.getLength(), end);
+		int length = Math.max(0, to - from);
+		InspectionMetrics.primitiveBytesRead(type == IObject.Type.CHAR ? 2L * length : length);
+		return primitiveArray.getValueArray(from, length);
+	}
+
+}
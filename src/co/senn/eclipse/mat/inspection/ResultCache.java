@@ -0,0 +1,396 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.DecimalFormat;
+import java.text.Format;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IContextObjectSet;
+import org.eclipse.mat.query.IResult;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.results.TextResult;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotInfo;
+
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+
+/**
+ * Keeps inspection results on disk next to MAT's index files, so reopening a
+ * dump that was already inspected does not run the inspections again.
+ * <p>
+ * There is one file per inspection ({@code <dump>.inspection.<id>.result}),
+ * holding a header with the cache key (plug-in version, inspection ID,
+ * snapshot identity and the {@linkplain InspectionSettings#getFingerprint()
+ * settings} that shape results) and the deflated result. A file whose key does
+ * not match is a miss and is overwritten by the next run, so a new plug-in
+ * version or a changed setting invalidates everything cached before. Only
+ * tables and text results are cached, and never partial ones. Columns keep
+ * their type, alignment, sorting and number or date format. The cache is
+ * best effort: any I/O error is a miss.
+ *
+ * @see InspectionSettings#isResultCache()
+ */
+final class ResultCache {
+
+	private static final int MAGIC = 0x4D415449; // MATI
+	private static final int FORMAT = 3;
+
+	private static final byte NO_RESULT = 0;
+	private static final byte TEXT = 1;
+	private static final byte TABLE = 2;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte BOOLEAN = 5;
+
+	private static final byte NO_FORMAT = 0;
+	private static final byte DECIMAL_FORMAT = 1;
+	private static final byte DATE_FORMAT = 2;
+
+	// Class.forName() does not know primitive types
+	// @formatter:off
+	private static final Class<?>[] PRIMITIVE_TYPES = {
+			int.class, long.class, double.class, float.class, boolean.class, short.class, byte.class, char.class
+	};
+	// @formatter:on
+
+	private ResultCache() {
+	}
+
+	/**
+	 * A cached run of an inspection, which may have found nothing.
+	 */
+	static final class Entry {
+
+		final InspectionResult result;
+
+		Entry(InspectionResult result) {
+			this.result = result;
+		}
+
+	}
+
+	/**
+	 * @return the cached run, or {@code null} on a miss
+	 */
+	static Entry load(ISnapshot snapshot, String inspectionId) {
+		File file = getFile(snapshot, inspectionId);
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(
+				new InflaterInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT
+					|| !getKey(snapshot, inspectionId).equals(readString(in))) {
+				return null;
+			}
+
+			if (!in.readBoolean()) {
+				return new Entry(null);
+			}
+
+			InspectionResultSeverity severity = InspectionResultSeverity.valueOf(in.readUTF());
+			String summary = readString(in);
+			return new Entry(new InspectionResult(readResult(in), summary, severity));
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	static void store(ISnapshot snapshot, String inspectionId, InspectionResult result) {
+		File file = getFile(snapshot, inspectionId);
+		if (file == null || (result != null && !isCacheable(result.getResult()))) {
+			return;
+		}
+
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()))))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				writeString(out, getKey(snapshot, inspectionId));
+				out.writeBoolean(result != null);
+				if (result != null) {
+					out.writeUTF(result.getSeverity().name());
+					writeString(out, result.getResultSummary());
+					writeResult(out, result.getResult());
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException | RuntimeException e) {
+			temp.delete();
+		}
+	}
+
+	private static File getFile(ISnapshot snapshot, String inspectionId) {
+		if (!InspectionSettings.isResultCache() || inspectionId == null || SnapshotFiles.getPluginVersion() == null) {
+			return null;
+		}
+
+		String prefix = snapshot.getSnapshotInfo().getPrefix();
+		return prefix == null ? null : new File(prefix + "inspection." + inspectionId + ".result");
+	}
+
+	private static String getKey(ISnapshot snapshot, String inspectionId) {
+		SnapshotInfo info = snapshot.getSnapshotInfo();
+		Date created = info.getCreationDate();
+		return SnapshotFiles.getPluginVersion() + '|' + inspectionId + '|' + info.getPath() + '|'
+				+ (created == null ? 0 : created.getTime()) + '|' + info.getNumberOfObjects() + '|'
+				+ info.getUsedHeapSize() + '|' + InspectionSettings.getFingerprint();
+	}
+
+	private static boolean isCacheable(IResult result) {
+		return result == null || result instanceof TextResult || result instanceof IResultTable;
+	}
+
+	private static void writeResult(DataOutputStream out, IResult result) throws IOException {
+		if (result instanceof TextResult) {
+			TextResult text = (TextResult) result;
+			out.writeByte(TEXT);
+			writeString(out, text.getText());
+			out.writeBoolean(text.isHtml());
+		} else if (result instanceof IResultTable) {
+			IResultTable table = (IResultTable) result;
+			Column[] columns = table.getColumns();
+			out.writeByte(TABLE);
+			out.writeInt(columns.length);
+			for (Column column : columns) {
+				writeString(out, column.getLabel());
+				writeString(out, column.getType() == null ? null : column.getType().getName());
+				out.writeByte(column.getAlign() == null ? -1 : column.getAlign().ordinal());
+				out.writeByte(column.getSortDirection() == null ? -1 : column.getSortDirection().ordinal());
+				out.writeBoolean(column.isCalculateTotals());
+				writeFormatter(out, column.getFormatter());
+			}
+
+			out.writeInt(table.getRowCount());
+			for (int i = 0; i < table.getRowCount(); i++) {
+				Object row = table.getRow(i);
+				for (int column = 0; column < columns.length; column++) {
+					writeValue(out, table.getColumnValue(row, column));
+				}
+				writeContext(out, table.getContext(row));
+			}
+		} else {
+			out.writeByte(NO_RESULT);
+		}
+	}
+
+	private static IResult readResult(DataInputStream in) throws IOException {
+		switch (in.readByte()) {
+		case TEXT:
+			return new TextResult(readString(in), in.readBoolean());
+		case TABLE:
+			Column[] columns = new Column[in.readInt()];
+			for (int i = 0; i < columns.length; i++) {
+				String label = readString(in);
+				String type = readString(in);
+				columns[i] = type == null ? new Column(label) : new Column(label, typeOf(type));
+				byte alignment = in.readByte();
+				if (alignment >= 0) {
+					columns[i].aligning(Column.Alignment.values()[alignment]);
+				}
+				byte sorting = in.readByte();
+				if (sorting >= 0) {
+					columns[i].sorting(Column.SortDirection.values()[sorting]);
+				}
+				if (!in.readBoolean()) {
+					columns[i].noTotals();
+				}
+				Format formatter = readFormatter(in);
+				if (formatter != null) {
+					columns[i].formatting(formatter);
+				}
+			}
+
+			int rowCount = in.readInt();
+			List<Object[]> rows = new ArrayList<>(rowCount);
+			List<int[]> contexts = new ArrayList<>(rowCount);
+			for (int i = 0; i < rowCount; i++) {
+				Object[] row = new Object[columns.length];
+				for (int column = 0; column < columns.length; column++) {
+					row[column] = readValue(in);
+				}
+				rows.add(row);
+				contexts.add(readContext(in));
+			}
+			return new CachedResultTable(columns, rows, contexts);
+		default:
+			return null;
+		}
+	}
+
+	private static Class<?> typeOf(String name) throws IOException {
+		for (Class<?> type : PRIMITIVE_TYPES) {
+			if (type.getName().equals(name)) {
+				return type;
+			}
+		}
+
+		try {
+			return Class.forName(name, false, ResultCache.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Formatters are stored by their pattern, and only {@link DecimalFormat}
+	 * and {@link SimpleDateFormat} are kept. Others are dropped.
+	 */
+	private static void writeFormatter(DataOutputStream out, Format formatter) throws IOException {
+		if (formatter instanceof DecimalFormat) {
+			out.writeByte(DECIMAL_FORMAT);
+			out.writeUTF(((DecimalFormat) formatter).toPattern());
+		} else if (formatter instanceof SimpleDateFormat) {
+			out.writeByte(DATE_FORMAT);
+			out.writeUTF(((SimpleDateFormat) formatter).toPattern());
+		} else {
+			out.writeByte(NO_FORMAT);
+		}
+	}
+
+	private static Format readFormatter(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		try {
+			switch (tag) {
+			case NO_FORMAT:
+				return null;
+			case DECIMAL_FORMAT:
+				return new DecimalFormat(in.readUTF());
+			case DATE_FORMAT:
+				return new SimpleDateFormat(in.readUTF());
+			default:
+				throw new IOException("Unknown formatter: " + tag);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else {
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		switch (in.readByte()) {
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case DOUBLE:
+			return in.readDouble();
+		case BOOLEAN:
+			return in.readBoolean();
+		case STRING:
+			return readString(in);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Object IDs are stable for the lifetime of the index files, so contexts
+	 * are kept as plain IDs.
+	 */
+	private static void writeContext(DataOutputStream out, IContextObject context) throws IOException {
+		int[] objectIds;
+		if (context instanceof IContextObjectSet) {
+			objectIds = ((IContextObjectSet) context).getObjectIds();
+		} else if (context != null && context.getObjectId() >= 0) {
+			objectIds = new int[] { context.getObjectId() };
+		} else {
+			objectIds = new int[0];
+		}
+
+		out.writeInt(objectIds.length);
+		for (int objectId : objectIds) {
+			out.writeInt(objectId);
+		}
+	}
+
+	private static int[] readContext(DataInputStream in) throws IOException {
+		int[] objectIds = new int[in.readInt()];
+		for (int i = 0; i < objectIds.length; i++) {
+			objectIds[i] = in.readInt();
+		}
+		return objectIds.length == 0 ? null : objectIds;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
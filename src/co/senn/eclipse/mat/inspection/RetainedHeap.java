@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.util.IProgressListener;
+
+/**
+ * Retained heap of groups of objects, looked up one object at a time with an
+ * {@linkplain InspectionBudget#checkpoint(IProgressListener) budget
+ * checkpoint} before each, since a single group can be large enough to run
+ * past the budget on its own.
+ */
+public final class RetainedHeap {
+
+	private RetainedHeap() {
+	}
+
+	/**
+	 * Looks up at most {@linkplain InspectionSettings#getSampleSize() sample
+	 * size} objects, evenly spaced over {@code objectIds} rather than the first
+	 * ones, whose low IDs would bias the estimate.
+	 *
+	 * @param objectIds the objects of the group, or a sample of them
+	 * @return the retained heap of the objects looked up (before the budget
+	 *         ran out), scaled up to the {@code count} objects of the group,
+	 *         or {@code -1} if the budget ran out before any was
+	 */
+	public static long estimate(ISnapshot snapshot, int[] objectIds, int count, IProgressListener listener)
+			throws SnapshotException {
+		if (objectIds.length == 0) {
+			return 0;
+		}
+
+		int samples = Math.min(objectIds.length, InspectionSettings.getSampleSize());
+		long retainedHeap = 0;
+		int i = 0;
+		for (; i < samples && !InspectionBudget.checkpoint(listener); i++) {
+			retainedHeap += snapshot.getRetainedHeapSize(objectIds[(int) ((long) i * objectIds.length / samples)]);
+		}
+		return i == 0 ? -1 : (long) ((double) retainedHeap * count / i);
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.util.IProgressListener;
+
+/**
+ * Runs one {@link ObjectScan} per snapshot on behalf of every registered
+ * {@link IScanAggregate}.
+ * <p>
+ * Each technology registers the aggregates of its inspections when it is
+ * loaded, before any of them runs, so the first request for a snapshot fills
+ * every one of them in a single pass whatever inspection runs first. An
+ * aggregate that was not registered (eg: one requested before its technology
+ * was loaded, or by another plug-in) is registered on first use and gets a
+ * pass of its own.
+ * <p>
+ * Aggregates are kept for as long as the snapshot is open, so they should
+ * only hold the IDs of rare types. Types with instances by the million (eg:
+ * arrays or collections) are better read on demand with
+ * {@link ObjectScan#getObjectIds(ISnapshot, String...)}.
+ * <p>
+ * Passes are {@linkplain InspectionMetrics measured} under {@value #METRICS}
+ * rather than as part of the inspection that happens to trigger them.
+ */
+public final class SharedScan {
+
+	public static final String METRICS = "<shared scan>";
+
+	private static final Map<Class<? extends IScanAggregate>, Supplier<? extends IScanAggregate>> AGGREGATES =
+			new LinkedHashMap<>();
+	private static final Map<ISnapshot, SharedScan> SCANS = new WeakHashMap<>();
+
+	private final Map<Class<? extends IScanAggregate>, IScanAggregate> aggregates = new HashMap<>();
+
+	private SharedScan() {
+	}
+
+	public static synchronized <T extends IScanAggregate> void register(Class<T> type, Supplier<T> supplier) {
+		AGGREGATES.putIfAbsent(type, supplier);
+	}
+
+	public static <T extends IScanAggregate> T get(ISnapshot snapshot, Class<T> type, IProgressListener listener)
+			throws SnapshotException {
+		SharedScan scan;
+		Map<Class<? extends IScanAggregate>, Supplier<? extends IScanAggregate>> registered;
+		synchronized (SharedScan.class) {
+			AGGREGATES.computeIfAbsent(type, t -> () -> newInstance(t));
+			scan = SCANS.computeIfAbsent(snapshot, s -> new SharedScan());
+			registered = new LinkedHashMap<>(AGGREGATES);
+		}
+
+		return type.cast(scan.aggregate(snapshot, type, registered, listener));
+	}
+
+	private static IScanAggregate newInstance(Class<? extends IScanAggregate> type) {
+		try {
+			return type.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(type.getName() + " has not been registered", e);
+		}
+	}
+
+	private synchronized IScanAggregate aggregate(ISnapshot snapshot, Class<? extends IScanAggregate> type,
+			Map<Class<? extends IScanAggregate>, Supplier<? extends IScanAggregate>> registered,
+			IProgressListener listener) throws SnapshotException {
+		IScanAggregate aggregate = aggregates.get(type);
+		if (aggregate != null) {
+			return aggregate;
+		}
+
+		ObjectScan scan = new ObjectScan();
+		Map<Class<? extends IScanAggregate>, IScanAggregate> pending = new LinkedHashMap<>();
+		registered.forEach((t, supplier) -> {
+			if (!aggregates.containsKey(t)) {
+				IScanAggregate a = supplier.get();
+				a.subscribe(scan);
+				pending.put(t, a);
+			}
+		});
+
+		InspectionMetrics.recordApart(snapshot, METRICS, () -> scan.run(snapshot, listener));
+		aggregates.putAll(pending);
+
+		return aggregates.get(type);
+	}
+
+}
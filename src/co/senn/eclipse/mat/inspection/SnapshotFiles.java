@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.io.File;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Locates the files the inspections keep next to MAT's index files, and the
+ * key that tells whether they are still valid.
+ */
+public final class SnapshotFiles {
+
+	private SnapshotFiles() {
+	}
+
+	/**
+	 * @return the version of this plug-in, or {@code null} when running outside
+	 *         of the platform (in which case nothing should be kept on disk)
+	 */
+	public static String getPluginVersion() {
+		Bundle bundle = FrameworkUtil.getBundle(SnapshotFiles.class);
+		return bundle == null ? null : bundle.getVersion().toString();
+	}
+
+	/**
+	 * @return the prefix MAT gives the index files of a dump, eg:
+	 *         {@code /dumps/heap.} for {@code /dumps/heap.hprof}
+	 */
+	public static String getPrefix(File dump) {
+		String path = dump.getPath();
+		int extension = path.lastIndexOf('.');
+		return extension > path.lastIndexOf(File.separatorChar) ? path.substring(0, extension + 1) : path + '.';
+	}
+
+	/**
+	 * @return a key for the dump file, plug-in version and the
+	 *         {@linkplain InspectionSettings#getFingerprint() settings} that
+	 *         shape results, which can be checked without opening the dump
+	 */
+	public static String getKey(File dump) {
+		return getPluginVersion() + '|' + dump.getAbsolutePath() + '|' + dump.length() + '|' + dump.lastModified()
+				+ '|' + InspectionSettings.getFingerprint();
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayInt;
+import org.eclipse.mat.collect.HashMapIntLong;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IStackFrame;
+import org.eclipse.mat.snapshot.model.IThreadStack;
+
+/**
+ * The objects referenced from the stack frames of every thread, indexed by
+ * object ID once per snapshot, so that "which thread is using this object"
+ * is a lookup rather than a walk of every thread's stack.
+ * <p>
+ * Dumps without stack traces (eg: some {@code jmap} dumps) have no frame
+ * locals, in which case the index is {@linkplain #isEmpty() empty}.
+ */
+public final class ThreadStackIndex {
+
+	private static final Map<ISnapshot, ThreadStackIndex> INDEXES = new WeakHashMap<>();
+
+	private final ArrayInt threads = new ArrayInt();
+	private final HashMapIntLong threadsByLocal = new HashMapIntLong();
+
+	private ThreadStackIndex() {
+	}
+
+	public static ThreadStackIndex get(ISnapshot snapshot) throws SnapshotException {
+		synchronized (INDEXES) {
+			ThreadStackIndex index = INDEXES.get(snapshot);
+			if (index == null) {
+				index = build(snapshot);
+				INDEXES.put(snapshot, index);
+			}
+			return index;
+		}
+	}
+
+	private static ThreadStackIndex build(ISnapshot snapshot) throws SnapshotException {
+		ThreadStackIndex index = new ThreadStackIndex();
+		Collection<IClass> classes = snapshot.getClassesByName("java.lang.Thread", true);
+		if (classes == null) {
+			return index;
+		}
+
+		for (IClass clazz : classes) {
+			for (int threadId : clazz.getObjectIds()) {
+				IThreadStack stack = snapshot.getThreadStack(threadId);
+				if (stack == null) {
+					continue;
+				}
+
+				index.threads.add(threadId);
+				for (IStackFrame frame : stack.getStackFrames()) {
+					for (int objectId : frame.getLocalObjectsIds()) {
+						// The first thread wins; objects are rarely live on two stacks
+						if (!index.threadsByLocal.containsKey(objectId)) {
+							index.threadsByLocal.put(objectId, threadId);
+						}
+					}
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return the object ID of the thread with the object as a local variable
+	 *         in one of its stack frames, or {@code -1} if there is none
+	 */
+	public int getThreadId(int objectId) {
+		return threadsByLocal.containsKey(objectId) ? (int) threadsByLocal.get(objectId) : -1;
+	}
+
+	/**
+	 * @return the object IDs of the threads with a stack trace
+	 */
+	public int[] getThreads() {
+		return threads.toArray();
+	}
+
+	public boolean isEmpty() {
+		return threadsByLocal.size() == 0;
+	}
+
+}
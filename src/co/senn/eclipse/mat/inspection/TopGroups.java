@@ -0,0 +1,324 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.eclipse.mat.collect.ArrayInt;
+
+/**
+ * Objects grouped by key, with a count, a few sums and a bounded sample of
+ * object IDs per group, of which only the top groups are reported.
+ * <p>
+ * One instance is filled per partition of the object IDs and the partials
+ * are then {@linkplain #merge merged} (see {@link ParallelScan#reduce}). Each
+ * group keeps only the first {@linkplain InspectionSettings#getSampleSize()
+ * sample} of its object IDs, and at most {@value #CAPACITY_FACTOR} times
+ * {@linkplain InspectionSettings#getMaxRows() max rows} groups are kept, so
+ * memory stays flat however many objects and distinct keys there are.
+ * <p>
+ * Groups are kept as a Space-Saving summary: once the capacity is reached,
+ * the groups with the fewest objects are folded into the {@value #OTHER} row
+ * and every key seen after that may have been counted up to that many times
+ * before. A key seen more often than any evicted group is always kept, and
+ * the {@value #OTHER} row still adds up to every object that is not in a top
+ * group. A key that is seen rarely but ranks high by a sum can be evicted
+ * once there are more distinct keys than the capacity.
+ * <p>
+ * Since the rows reported hold a sample of their objects only, inspections
+ * run a second pass over the objects with the {@linkplain #topKeys top keys}
+ * (see {@link #TopGroups(int, Set)}), which keeps every object ID and exact
+ * counts and sums for those keys alone, unless the first pass was
+ * {@linkplain #isComplete(int) complete} already.
+ *
+ * @param <K> the key, which must implement {@code equals} and
+ *            {@code hashCode}
+ */
+public final class TopGroups<K> {
+
+	/**
+	 * The label of the row the groups beyond the limit are folded into
+	 */
+	public static final String OTHER = "<other>";
+
+	/**
+	 * The number of groups kept per row reported
+	 */
+	public static final int CAPACITY_FACTOR = 10;
+
+	// Ties are broken by the first object of each group, so that the same
+	// partials always evict the same groups
+	// @formatter:off
+	private static final Comparator<Group<?>> EVICTION_ORDER = Comparator
+			.comparingLong((Group<?> g) -> g.getEstimatedCount()).thenComparingInt(g -> g.firstObjectId);
+	// @formatter:on
+
+	private final Map<K, Group<K>> groups = new HashMap<>();
+	private final int sums;
+	private final int sampleSize;
+	private final int capacity;
+	private final Group<K> evicted;
+	private final Set<K> keys;
+	private long floor;
+
+	/**
+	 * @param sums the number of values summed per group
+	 */
+	public TopGroups(int sums) {
+		this(sums, InspectionSettings.getSampleSize());
+	}
+
+	public TopGroups(int sums, int sampleSize) {
+		this(sums, sampleSize, (int) Math.min(Integer.MAX_VALUE, (long) CAPACITY_FACTOR
+				* InspectionSettings.getMaxRows()));
+	}
+
+	/**
+	 * @param capacity the number of groups kept, beyond which the least
+	 *                 frequent are folded into the {@value #OTHER} row
+	 */
+	public TopGroups(int sums, int sampleSize, int capacity) {
+		this.sums = sums;
+		this.sampleSize = sampleSize;
+		this.capacity = Math.max(2, capacity);
+		this.evicted = new Group<>(null, sums, -1);
+		this.keys = null;
+	}
+
+	/**
+	 * For a second pass over the objects: groups only the objects with one of
+	 * {@code keys} and folds all others into the {@value #OTHER} row, keeping
+	 * every object ID.
+	 */
+	public TopGroups(int sums, Set<K> keys) {
+		this.sums = sums;
+		this.sampleSize = Integer.MAX_VALUE;
+		this.capacity = Integer.MAX_VALUE;
+		this.evicted = new Group<>(null, sums, -1);
+		this.keys = keys;
+	}
+
+	/**
+	 * Counts an object in the group of {@code key}.
+	 *
+	 * @return the group, to {@linkplain Group#add add} the object's values to
+	 */
+	public Group<K> add(K key, int objectId) {
+		Group<K> group = keys == null || keys.contains(key) ? groups.get(key) : evicted;
+		if (group == null) {
+			if (groups.size() >= capacity) {
+				evict();
+			}
+			group = new Group<>(key, sums, objectId);
+			group.error = floor;
+			groups.put(key, group);
+		}
+		if (group.objectIds.size() < sampleSize) {
+			group.objectIds.add(objectId);
+		}
+		group.count++;
+		return group;
+	}
+
+	/**
+	 * Merges {@code other} into this instance. Object IDs keep their order, so
+	 * merging partials left-to-right samples the same objects as a single
+	 * sequential pass.
+	 */
+	public TopGroups<K> merge(TopGroups<K> other) {
+		// A key missing from one summary may have been counted up to its floor
+		groups.forEach((key, group) -> {
+			if (!other.groups.containsKey(key)) {
+				group.error += other.floor;
+			}
+		});
+		other.groups.forEach((key, group) -> {
+			Group<K> merged = groups.putIfAbsent(key, group);
+			if (merged != null) {
+				merged.merge(group, sampleSize);
+			} else {
+				group.error += floor;
+			}
+		});
+		evicted.merge(other.evicted, sampleSize);
+		floor += other.floor;
+		if (groups.size() > capacity) {
+			evict();
+		}
+		return this;
+	}
+
+	/**
+	 * Folds the least frequent half of the groups into {@link #evicted}, so
+	 * that evictions are amortized over many additions.
+	 */
+	private void evict() {
+		List<Group<K>> sorted = new ArrayList<>(groups.values());
+		sorted.sort(EVICTION_ORDER);
+		for (Group<K> group : sorted.subList(0, sorted.size() - capacity / 2)) {
+			groups.remove(group.key);
+			evicted.merge(group, sampleSize);
+			floor = Math.max(floor, group.getEstimatedCount());
+		}
+	}
+
+	public boolean isEmpty() {
+		return groups.isEmpty() && evicted.count == 0;
+	}
+
+	/**
+	 * @return whether {@link #top} reports every object ID of every group,
+	 *         ie: whether a second pass over the objects can be skipped
+	 */
+	public boolean isComplete(int limit) {
+		if (keys != null) {
+			return true;
+		}
+		if (evicted.count > 0 || groups.size() > limit) {
+			return false;
+		}
+		for (Group<K> group : groups.values()) {
+			if (group.count > group.objectIds.size()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the keys of the first {@code limit} groups in {@code order}, for
+	 *         a second pass over the objects
+	 */
+	public Set<K> topKeys(int limit, Comparator<? super Group<K>> order) {
+		Set<K> top = new HashSet<>();
+		for (Group<K> group : top(limit, order, null)) {
+			// The other row, if any, is keyed null
+			if (group.key != null) {
+				top.add(group.key);
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * @param order a total order, so that the result does not depend on how
+	 *              the objects were partitioned
+	 * @return the first {@code limit} groups in {@code order}, followed by a
+	 *         single group keyed {@code other} for all remaining and evicted
+	 *         groups (if any)
+	 */
+	public List<Group<K>> top(int limit, Comparator<? super Group<K>> order, K other) {
+		// Keep only the top groups on a min-heap rather than sorting them all
+		PriorityQueue<Group<K>> top = new PriorityQueue<>(Math.min(limit, groups.size()) + 1,
+				Collections.reverseOrder(order));
+		Group<K> rest = new Group<>(other, sums, -1);
+		rest.merge(evicted, sampleSize);
+		for (Group<K> group : groups.values()) {
+			top.add(group);
+			if (top.size() > limit) {
+				rest.merge(top.poll(), sampleSize);
+			}
+		}
+
+		List<Group<K>> sorted = new ArrayList<>(top);
+		sorted.sort(order);
+		if (rest.count > 0) {
+			sorted.add(rest);
+		}
+		return sorted;
+	}
+
+	public static final class Group<K> {
+
+		private final K key;
+		private final long[] sums;
+		private final int firstObjectId;
+		private final ArrayInt objectIds = new ArrayInt();
+		private int count;
+		private long error;
+
+		Group(K key, int sums, int firstObjectId) {
+			this.key = key;
+			this.sums = new long[sums];
+			this.firstObjectId = firstObjectId;
+		}
+
+		private void merge(Group<K> other, int sampleSize) {
+			for (int i = 0; i < other.objectIds.size() && objectIds.size() < sampleSize; i++) {
+				objectIds.add(other.objectIds.get(i));
+			}
+			for (int i = 0; i < sums.length; i++) {
+				sums[i] += other.sums[i];
+			}
+			count += other.count;
+			error += other.error;
+		}
+
+		public void add(int sum, long value) {
+			sums[sum] += value;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the number of objects counted in the group, which may miss
+		 *         some seen before the group was last evicted
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return an upper bound of the number of objects with the key
+		 */
+		long getEstimatedCount() {
+			return count + error;
+		}
+
+		public long getSum(int sum) {
+			return sums[sum];
+		}
+
+		/**
+		 * @return the object IDs of the group, or of a sample of them if there
+		 *         are more than the sample size
+		 */
+		public int[] getObjectIds() {
+			return objectIds.toArray();
+		}
+
+		/**
+		 * @return a value measured on the {@linkplain #getObjectIds() sample}
+		 *         scaled up to the whole group
+		 */
+		public long extrapolate(long sampled) {
+			int size = objectIds.size();
+			return size == 0 || size == count ? sampled : (long) ((double) sampled * count / size);
+		}
+
+	}
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.collection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IArray;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IObjectArray;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.GCRootPaths;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
+import co.senn.eclipse.mat.inspection.InspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.ObjectScan;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.TopGroups;
+import co.senn.eclipse.mat.inspection.TopGroups.Group;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+
+/**
+ * Reports the memory lost to oversized backing arrays: {@code ArrayList}s
+ * with mostly empty {@code elementData}, and {@code HashMap}s and
+ * {@code ConcurrentHashMap}s whose table is larger than their size needs.
+ * <p>
+ * Only array lengths and size fields are read, never the elements. The
+ * capacity a collection needs is its size for lists, and the table a map of
+ * its size would grow to at the default load factor for maps, but never less
+ * than the default capacity (10 for lists, 16 for maps), which every small
+ * collection gets anyway. The waste is the share of the backing array's
+ * shallow size beyond that capacity, grouped by collection type and owner
+ * (the class and field holding the collection), so that each row points at
+ * the code that sizes the collections.
+ * <p>
+ * Owners are only looked up for oversized collections, since every lookup
+ * reads inbound references. JDK wrappers (eg: the {@code HashSet} around a
+ * {@code HashMap}) and arrays are looked past.
+ */
+public class CapacityWasteInspection extends AbstractInspection implements ITabular {
+
+	static final String HASH_MAP = "java.util.HashMap";
+	static final String CONCURRENT_HASH_MAP = "java.util.concurrent.ConcurrentHashMap";
+
+	private static final String UNREFERENCED = "<unreferenced>";
+
+	private static final int LIST_DEFAULT_CAPACITY = 10;
+	private static final int MAP_DEFAULT_CAPACITY = 16;
+
+	private static final int OWNER_DEPTH = 8;
+
+	private static final int CAPACITY = 0;
+	private static final int SIZE = 1;
+	private static final int WASTED_HEAP = 2;
+
+	private static final CapacityKey OTHER = new CapacityKey(TopGroups.OTHER, "");
+
+	private static final Comparator<Group<CapacityKey>> ORDER = Comparator
+			.comparingLong((Group<CapacityKey> g) -> g.getSum(WASTED_HEAP)).reversed()
+			.thenComparing(g -> g.getKey().type).thenComparing(g -> g.getKey().owner);
+
+	@Override
+	public Column[] getColumns() {
+		return CapacityWasteTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		TopGroups<CapacityKey> groups = scan(snapshot, () -> new TopGroups<>(3), listener);
+		if (groups.isEmpty()) {
+			return null;
+		}
+
+		// Second pass for every collection of the rows shown, as their context
+		int limit = InspectionSettings.getMaxRows();
+		if (!groups.isComplete(limit)) {
+			Set<CapacityKey> keys = groups.topKeys(limit, ORDER);
+			TopGroups<CapacityKey> all = scan(snapshot, () -> new TopGroups<>(3, keys), listener);
+			if (!InspectionBudget.checkpoint(listener)) {
+				groups = all;
+			}
+		}
+
+		long wastedHeap = 0;
+		int collections = 0;
+		List<CapacityWasteResult> results = new ArrayList<>();
+		for (Group<CapacityKey> group : groups.top(limit, ORDER, OTHER)) {
+			wastedHeap += group.getSum(WASTED_HEAP);
+			collections += group.getCount();
+			// @formatter:off
+			results.add(new CapacityWasteResult(
+					group.getKey().type,
+					group.getKey().owner,
+					group.getCount(),
+					group.getSum(CAPACITY),
+					group.getSum(SIZE),
+					group.getSum(WASTED_HEAP),
+					group.getObjectIds()
+			));
+			// @formatter:on
+		}
+
+		return new InspectionResult(new CapacityWasteTable(results),
+				String.format("Found %,d bytes wasted by the backing arrays of %,d oversized collections", wastedHeap,
+						collections),
+				InspectionResultSeverity.INFO);
+	}
+
+	/**
+	 * Scans every {@code ArrayList}, {@code HashMap} (including
+	 * {@code LinkedHashMap} and the maps behind {@code HashSet}s) and
+	 * {@code ConcurrentHashMap}.
+	 */
+	private static TopGroups<CapacityKey> scan(ISnapshot snapshot, Supplier<TopGroups<CapacityKey>> partials,
+			IProgressListener listener) throws SnapshotException {
+		TopGroups<CapacityKey> groups = partials.get();
+		groups.merge(scan(snapshot, ListToSetInspection.ARRAY_LIST, new CapacityCheck("elementData", false),
+				partials, listener));
+		groups.merge(scan(snapshot, HASH_MAP, new CapacityCheck("table", true), partials, listener));
+		groups.merge(scan(snapshot, CONCURRENT_HASH_MAP, new ConcurrentCapacityCheck(), partials, listener));
+		return groups;
+	}
+
+	private static TopGroups<CapacityKey> scan(ISnapshot snapshot, String type, CapacityCheck check,
+			Supplier<TopGroups<CapacityKey>> partials, IProgressListener listener) throws SnapshotException {
+		int[] collections = ObjectScan.getObjectIds(snapshot, type);
+		return ParallelScan.reduce(collections, partials, (partial, collectionId) -> {
+			IObject collection = snapshot.getObject(collectionId);
+			Object value = check.array.resolve(collection);
+			if (!(value instanceof IObjectArray)) {
+				return; // Not allocated yet
+			}
+
+			IArray array = (IArray) value;
+			int capacity = array.getLength();
+			int size = check.getSize(collection);
+			if (capacity == 0 || size < 0) {
+				return;
+			}
+
+			int needed = check.hashed ? Math.max(getTableSize(size), MAP_DEFAULT_CAPACITY)
+					: Math.max(size, LIST_DEFAULT_CAPACITY);
+			if (capacity <= needed) {
+				return;
+			}
+
+			long wasted = array.getUsedHeapSize() * (capacity - needed) / capacity;
+			String owner = GCRootPaths.getApplicationOwner(snapshot, collectionId, OWNER_DEPTH);
+			// @formatter:off
+			CapacityKey key = new CapacityKey(
+					collection.getClazz().getName(),
+					owner != null ? owner : UNREFERENCED
+			);
+			// @formatter:on
+			Group<CapacityKey> group = partial.add(key, collectionId);
+			group.add(CAPACITY, capacity);
+			group.add(SIZE, size);
+			group.add(WASTED_HEAP, wasted);
+		}, TopGroups::merge, listener);
+	}
+
+	/**
+	 * @return the table length a {@code HashMap} or {@code ConcurrentHashMap}
+	 *         of the given size grows to at the default load factor (0.75)
+	 */
+	static int getTableSize(int size) {
+		if (size == 0) {
+			return 0;
+		}
+
+		long needed = (size * 4L + 2) / 3;
+		return needed >= 1 << 30 ? 1 << 30 : Integer.highestOneBit((int) needed - 1) << 1;
+	}
+
+	private static class CapacityCheck {
+
+		private final FieldPath array;
+		private final FieldPath size = FieldPath.compile("size");
+		private final boolean hashed;
+
+		CapacityCheck(String array, boolean hashed) {
+			this.array = FieldPath.compile(array);
+			this.hashed = hashed;
+		}
+
+		/**
+		 * @return the number of elements, or {@code -1} if unknown
+		 */
+		int getSize(IObject collection) throws SnapshotException {
+			Object value = size.resolve(collection);
+			return value instanceof Integer ? (Integer) value : -1;
+		}
+
+	}
+
+	/**
+	 * {@code ConcurrentHashMap} has no size field; its size is a base count
+	 * plus the counter cells added under contention.
+	 */
+	private static final class ConcurrentCapacityCheck extends CapacityCheck {
+
+		private final FieldPath baseCount = FieldPath.compile("baseCount");
+		private final FieldPath counterCells = FieldPath.compile("counterCells");
+		private final FieldPath value = FieldPath.compile("value");
+
+		ConcurrentCapacityCheck() {
+			super("table", true);
+		}
+
+		@Override
+		int getSize(IObject collection) throws SnapshotException {
+			Object base = baseCount.resolve(collection);
+			if (!(base instanceof Long)) {
+				return -1;
+			}
+
+			long size = (Long) base;
+			Object cells = counterCells.resolve(collection);
+			if (cells instanceof IObjectArray) {
+				IObjectArray array = (IObjectArray) cells;
+				for (long address : array.getReferenceArray(0, array.getLength())) {
+					if (address != 0) {
+						ISnapshot snapshot = collection.getSnapshot();
+						Object count = value.resolve(snapshot.getObject(snapshot.mapAddressToId(address)));
+						if (count instanceof Long) {
+							size += (Long) count;
+						}
+					}
+				}
+			}
+			return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size));
+		}
+
+	}
+
+	/**
+	 * The collection class and owner collections are grouped by.
+	 */
+	private static final class CapacityKey {
+
+		private final String type;
+		private final String owner;
+
+		CapacityKey(String type, String owner) {
+			this.type = type;
+			this.owner = owner;
+		}
+
+		@Override
+		public int hashCode() {
+			return type.hashCode() * 31 + owner.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CapacityKey)) {
+				return false;
+			}
+
+			CapacityKey other = (CapacityKey) obj;
+			return type.equals(other.type) && owner.equals(other.owner);
+		}
+
+	}
+
+	public static class CapacityWasteResult {
+
+		private final String type;
+		private final String owner;
+		private final int count;
+		private final long capacity;
+		private final long size;
+		private final long wastedHeap;
+		private final int[] objectIds;
+
+		public CapacityWasteResult(String type, String owner, int count, long capacity, long size, long wastedHeap,
+				int[] objectIds) {
+			this.type = type;
+			this.owner = owner;
+			this.count = count;
+			this.capacity = capacity;
+			this.size = size;
+			this.wastedHeap = wastedHeap;
+			this.objectIds = objectIds;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * @return the class and field holding the collections (eg:
+		 *         {@code com.example.Cache.entries}), or an empty string for the
+		 *         {@value TopGroups#OTHER} row
+		 */
+		public String getOwner() {
+			return owner;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the total length of the backing arrays
+		 */
+		public long getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * @return the total number of elements
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		public long getWastedHeap() {
+			return wastedHeap;
+		}
+
+		/**
+		 * @return the object IDs of the collections, or of a sample of them if
+		 *         there are more than {@link InspectionSettings#getSampleSize()}
+		 */
+		public int[] getObjectIds() {
+			return objectIds;
+		}
+
+	}
+
+}
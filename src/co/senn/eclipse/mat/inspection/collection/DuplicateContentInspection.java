@@ -0,0 +1,350 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.collection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayInt;
+import org.eclipse.mat.collect.HashMapLongObject;
+import org.eclipse.mat.collect.SetLong;
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IPrimitiveArray;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.GCRootPaths;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
+import co.senn.eclipse.mat.inspection.InspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.LongCountMap;
+import co.senn.eclipse.mat.inspection.ObjectScan;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.PrimitiveArrays;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+
+/**
+ * Reports {@code String}, {@code byte[]} and {@code char[]} values that are
+ * held many times over.
+ * <p>
+ * The first pass hashes the content of every array in parallel into a
+ * {@link LongCountMap}, so memory grows with the number of distinct values
+ * rather than the number of arrays. The second pass only rereads arrays whose
+ * shallow size matches one of the top values, to find the instances of each
+ * and the fields that hold them. The waste of a value is the shallow size of
+ * all but one of its arrays (the {@code String} objects themselves are not
+ * counted).
+ */
+public class DuplicateContentInspection extends AbstractInspection implements ITabular {
+
+	private static final String STRING = "java.lang.String";
+	private static final String BYTE_ARRAY = "byte[]";
+	private static final String CHAR_ARRAY = "char[]";
+
+	/**
+	 * Arrays are hashed in slices of this many elements, so that large arrays
+	 * are never copied out of the dump at once
+	 */
+	private static final int SLICE_LENGTH = 64 * 1024;
+
+	private static final int PREVIEW_LENGTH = 80;
+	private static final int OWNER_SAMPLES = 25;
+	private static final int OWNERS_SHOWN = 3;
+
+	private static final Comparator<DuplicateContentResult> ORDER = Comparator
+			.comparingLong(DuplicateContentResult::getWastedHeap).reversed()
+			.thenComparing(Comparator.comparingInt(DuplicateContentResult::getCount).reversed());
+
+	@Override
+	public Column[] getColumns() {
+		return DuplicateContentTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		// Every String is backed by a char[] before compact strings (Java 9) and a byte[] after
+		int[] arrays = ObjectScan.getObjectIds(snapshot, CHAR_ARRAY, BYTE_ARRAY);
+
+		listener.subTask("Hashing array contents");
+		LongCountMap values = ParallelScan.reduce(arrays, LongCountMap::new, (partial, arrayId) -> {
+			IObject array = snapshot.getObject(arrayId);
+			if (array instanceof IPrimitiveArray && ((IPrimitiveArray) array).getLength() > 0) {
+				partial.add(hash((IPrimitiveArray) array), array.getUsedHeapSize());
+			}
+		}, LongCountMap::merge, listener);
+
+		// Keep the top duplicated values only, by the heap that deduplication would save
+		List<long[]> duplicates = new ArrayList<>();
+		long[] totals = new long[2];
+		values.forEach((key, count, heap) -> {
+			if (count > 1) {
+				long wasted = heap - heap / count;
+				duplicates.add(new long[] { key, wasted, heap / count });
+				totals[0] += wasted;
+				totals[1]++;
+			}
+		});
+		if (duplicates.isEmpty()) {
+			return null;
+		}
+
+		duplicates.sort(Comparator.comparingLong((long[] d) -> d[1]).reversed().thenComparingLong(d -> d[0]));
+		int rows = Math.min(duplicates.size(), InspectionSettings.getMaxRows());
+		SetLong keys = new SetLong();
+		SetLong sizes = new SetLong();
+		for (long[] duplicate : duplicates.subList(0, rows)) {
+			keys.add(duplicate[0]);
+			sizes.add(duplicate[2]);
+		}
+
+		listener.subTask("Finding duplicated values");
+		HashMapLongObject<ArrayInt> instances = find(snapshot, arrays, keys, sizes, listener);
+
+		FieldPath coder = FieldPath.optional("coder"); // Java 9+
+		List<DuplicateContentResult> results = new ArrayList<>(rows);
+		for (int i = 0; i < rows && !InspectionBudget.checkpoint(listener); i++) {
+			ArrayInt objectIds = instances.get(duplicates.get(i)[0]);
+			if (objectIds == null) {
+				continue; // The second pass ran out of time
+			}
+			results.add(describe(snapshot, objectIds.toArray(), coder, listener));
+		}
+		results.sort(ORDER);
+
+		return new InspectionResult(new DuplicateContentTable(results),
+				String.format("Found %,d bytes wasted by %,d values held more than once", totals[0], totals[1]),
+				InspectionResultSeverity.INFO);
+	}
+
+	/**
+	 * @return the object IDs of the arrays with the given content hashes,
+	 *         reading only arrays of one of the given shallow sizes
+	 */
+	private static HashMapLongObject<ArrayInt> find(ISnapshot snapshot, int[] arrays, SetLong keys, SetLong sizes,
+			IProgressListener listener) throws SnapshotException {
+		return ParallelScan.reduce(arrays, HashMapLongObject<ArrayInt>::new, (partial, arrayId) -> {
+			IObject array = snapshot.getObject(arrayId);
+			if (!(array instanceof IPrimitiveArray) || ((IPrimitiveArray) array).getLength() == 0
+					|| !sizes.contains(array.getUsedHeapSize())) {
+				return;
+			}
+
+			long key = hash((IPrimitiveArray) array);
+			if (keys.contains(key)) {
+				ArrayInt objectIds = partial.get(key);
+				if (objectIds == null) {
+					objectIds = new ArrayInt();
+					partial.put(key, objectIds);
+				}
+				objectIds.add(arrayId);
+			}
+		}, (left, right) -> {
+			for (long key : right.getAllKeys()) {
+				ArrayInt objectIds = left.get(key);
+				if (objectIds == null) {
+					left.put(key, right.get(key));
+				} else {
+					objectIds.addAll(right.get(key));
+				}
+			}
+			return left;
+		}, listener);
+	}
+
+	/**
+	 * @return a 64-bit hash of the type, length and content of the array
+	 *         (never {@code 0})
+	 */
+	static long hash(IPrimitiveArray array) throws SnapshotException {
+		int length = array.getLength();
+		long hash = 0xCBF29CE484222325L ^ ((long) array.getType() << 32 | length); // FNV-1a
+		for (int start = 0; start < length; start += SLICE_LENGTH) {
+			int end = Math.min(length, start + SLICE_LENGTH);
+			if (array.getType() == IObject.Type.BYTE) {
+				for (byte b : PrimitiveArrays.getBytes(array, start, end)) {
+					hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+				}
+			} else {
+				for (char c : PrimitiveArrays.getChars(array, start, end)) {
+					hash = (hash ^ c) * 0x100000001B3L;
+				}
+			}
+		}
+
+		// Spread the bits (murmur3's finalizer), as FNV leaves the top ones weak
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash != 0 ? hash : 1;
+	}
+
+	private static DuplicateContentResult describe(ISnapshot snapshot, int[] objectIds, FieldPath coder,
+			IProgressListener listener) throws SnapshotException {
+		IPrimitiveArray sample = (IPrimitiveArray) snapshot.getObject(objectIds[0]);
+
+		// Owners are sampled, since every lookup reads the inbound references
+		Map<String, Integer> owners = new HashMap<>();
+		boolean strings = false;
+		IObject string = null;
+		for (int i = 0; i < Math.min(objectIds.length, OWNER_SAMPLES) && !InspectionBudget.checkpoint(listener); i++) {
+			int ownerId = objectIds[i];
+			int[] referrers = snapshot.getInboundRefererIds(ownerId);
+			if (referrers.length > 0 && STRING.equals(snapshot.getClassOf(referrers[0]).getName())) {
+				// Report what holds the String rather than String.value
+				ownerId = referrers[0];
+				strings = true;
+				if (string == null) {
+					string = snapshot.getObject(ownerId);
+				}
+			}
+
+			String owner = GCRootPaths.getOwner(snapshot, ownerId);
+			owners.merge(owner != null ? owner : "<unreferenced>", 1, Integer::sum);
+		}
+
+		long shallowHeap = sample.getUsedHeapSize();
+		// @formatter:off
+		return new DuplicateContentResult(
+				strings ? STRING : sample.getClazz().getName(),
+				getPreview(sample, string, coder),
+				sample.getLength(),
+				shallowHeap * (objectIds.length - 1),
+				describe(owners),
+				objectIds
+		);
+		// @formatter:on
+	}
+
+	/**
+	 * @return the most frequent owners with their counts (eg:
+	 *         {@code com.example.Cache.entries (12), ...})
+	 */
+	private static String describe(Map<String, Integer> owners) {
+		List<Map.Entry<String, Integer>> entries = new ArrayList<>(owners.entrySet());
+		entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+				.thenComparing(Map.Entry.comparingByKey()));
+
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Integer> entry : entries.subList(0, Math.min(entries.size(), OWNERS_SHOWN))) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(entry.getKey()).append(" (").append(entry.getValue()).append(')');
+		}
+		if (entries.size() > OWNERS_SHOWN) {
+			sb.append(", ...");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the start of the value as text; {@code byte[]}s are read as
+	 *         Latin-1 unless they back a UTF-16 {@code String}
+	 */
+	private static String getPreview(IPrimitiveArray array, IObject string, FieldPath coder)
+			throws SnapshotException {
+		String preview;
+		if (array.getType() == IObject.Type.CHAR) {
+			preview = new String(PrimitiveArrays.getChars(array, 0, PREVIEW_LENGTH));
+		} else if (string != null && Byte.valueOf((byte) 1).equals(coder.resolve(string))) {
+			// StringUTF16 stores chars in the platform's (usually little-endian) byte order
+			preview = new String(PrimitiveArrays.getBytes(array, 0, PREVIEW_LENGTH * 2),
+					StandardCharsets.UTF_16LE);
+		} else {
+			preview = new String(PrimitiveArrays.getBytes(array, 0, PREVIEW_LENGTH), StandardCharsets.ISO_8859_1);
+		}
+
+		char[] chars = preview.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (Character.isISOControl(chars[i])) {
+				chars[i] = '.';
+			}
+		}
+		return array.getLength() > chars.length ? new String(chars) + "..." : new String(chars);
+	}
+
+	public static class DuplicateContentResult {
+
+		private final String type;
+		private final String value;
+		private final int length;
+		private final long wastedHeap;
+		private final String owners;
+		private final int[] objectIds;
+
+		public DuplicateContentResult(String type, String value, int length, long wastedHeap, String owners,
+				int[] objectIds) {
+			this.type = type;
+			this.value = value;
+			this.length = length;
+			this.wastedHeap = wastedHeap;
+			this.owners = owners;
+			this.objectIds = Arrays.copyOf(objectIds, objectIds.length);
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * @return the start of the value, with control characters replaced
+		 */
+		public String getValue() {
+			return value;
+		}
+
+		/**
+		 * @return the length of the backing array
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		public int getCount() {
+			return objectIds.length;
+		}
+
+		public long getWastedHeap() {
+			return wastedHeap;
+		}
+
+		/**
+		 * @return the fields most often holding the value, among a sample of
+		 *         its instances (eg: {@code com.example.Header.name (12)})
+		 */
+		public String getOwners() {
+			return owners;
+		}
+
+		public int[] getObjectIds() {
+			return objectIds;
+		}
+
+	}
+
+}
@@ -15,17 +15,218 @@
  */
 package co.senn.eclipse.mat.inspection.collection;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayInt;
+import org.eclipse.mat.query.Column;
 import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IObjectArray;
 import org.eclipse.mat.util.IProgressListener;
 
-import co.senn.eclipse.mat.inspection.api.IInspection;
-import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
+import co.senn.eclipse.mat.inspection.InspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.LongOpenHashSet;
+import co.senn.eclipse.mat.inspection.ObjectScan;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+
+/**
+ * Reports lists that contain only unique, non-null items.
+ * <p>
+ * Large lists like these are often only used for lookups, where every
+ * {@code contains} is O(n) and a {@code Set} would do better.
+ */
+public class ListToSetInspection extends AbstractInspection implements ITabular {
+
+	static final String ARRAY_LIST = "java.util.ArrayList";
+	static final String LINKED_LIST = "java.util.LinkedList";
+	static final String COPY_ON_WRITE_ARRAY_LIST = "java.util.concurrent.CopyOnWriteArrayList";
+
+	/**
+	 * Lists smaller than this are cheap to search and are not reported
+	 */
+	private static final int MINIMUM_SIZE = 16;
 
-public class ListToSetInspection implements IInspection {
+	private static final Comparator<ListToSetResult> ORDER = Comparator.comparingInt(ListToSetResult::getSize)
+			.thenComparingLong(ListToSetResult::getRetainedHeap).reversed();
 
 	@Override
-	public IInspectionResult execute(ISnapshot snapshot, IProgressListener listener) throws Exception {
-		return null;
+	public Column[] getColumns() {
+		return ListToSetTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		int[] lists = ObjectScan.getObjectIds(snapshot, ARRAY_LIST, LINKED_LIST, COPY_ON_WRITE_ARRAY_LIST);
+
+		// Each partition reuses one checker (and set) for all of the lists it checks
+		Candidates candidates = ParallelScan.reduce(lists, Candidates::new, UniquenessCheck::new,
+				(partial, check, listId) -> {
+			int size = check.getUniqueSize(snapshot.getObject(listId));
+			if (size >= MINIMUM_SIZE) {
+				partial.listIds.add(listId);
+				partial.sizes.add(size);
+			}
+		}, Candidates::merge, listener);
+
+		if (candidates.listIds.size() == 0) {
+			return null;
+		}
+
+		// Rank by size first, then compute retained heap for the top rows only
+		long[] bySize = new long[candidates.listIds.size()];
+		for (int i = 0; i < bySize.length; i++) {
+			bySize[i] = ((long) candidates.sizes.get(i) << 32) | i;
+		}
+		Arrays.sort(bySize);
+
+		int rows = Math.min(bySize.length, InspectionSettings.getMaxRows());
+		List<ListToSetResult> results = new ArrayList<>(rows);
+		for (int i = bySize.length - 1; i >= bySize.length - rows && !InspectionBudget.checkpoint(listener); i--) {
+			int index = (int) bySize[i];
+			IObject list = snapshot.getObject(candidates.listIds.get(index));
+			results.add(new ListToSetResult(list.getTechnicalName(), candidates.sizes.get(index),
+					list.getRetainedHeapSize(), list.getObjectId()));
+		}
+		results.sort(ORDER);
+
+		return new InspectionResult(new ListToSetTable(results),
+				"Found " + candidates.listIds.size() + " lists that contain only unique, non-null items",
+				InspectionResultSeverity.INFO);
+	}
+
+	private static final class UniquenessCheck {
+
+		private final FieldPath elementData = FieldPath.compile("elementData");
+		private final FieldPath array = FieldPath.compile("array");
+		private final FieldPath size = FieldPath.compile("size");
+		private final FieldPath first = FieldPath.compile("first");
+		private final FieldPath item = FieldPath.compile("item");
+		private final FieldPath next = FieldPath.compile("next");
+
+		private final LongOpenHashSet set = new LongOpenHashSet();
+
+		/**
+		 * @return the size of the list if all of its items are unique and
+		 *         non-null, or {@code -1} otherwise
+		 */
+		int getUniqueSize(IObject list) throws SnapshotException {
+			// Subclasses are scanned too, and keep the fields of the list they extend
+			IClass type = list.getClazz();
+			if (type.doesExtend(LINKED_LIST)) {
+				return getUniqueSizeOfLinkedList(list);
+			}
+
+			boolean copyOnWrite = type.doesExtend(COPY_ON_WRITE_ARRAY_LIST);
+			Object value = (copyOnWrite ? array : elementData).resolve(list);
+			if (!(value instanceof IObjectArray)) {
+				return -1;
+			}
+
+			// The array of a CopyOnWriteArrayList is always exactly as long as the list
+			IObjectArray elements = (IObjectArray) value;
+			int length = elements.getLength();
+			if (!copyOnWrite) {
+				Object sizeValue = size.resolve(list);
+				if (sizeValue instanceof Integer) {
+					length = Math.min(length, (Integer) sizeValue);
+				}
+			}
+			if (length < MINIMUM_SIZE) {
+				return -1;
+			}
+
+			set.reset(length);
+			for (long address : elements.getReferenceArray(0, length)) {
+				if (address == 0 || !set.add(address)) {
+					return -1;
+				}
+			}
+
+			return length;
+		}
+
+		private int getUniqueSizeOfLinkedList(IObject list) throws SnapshotException {
+			Object sizeValue = size.resolve(list);
+			if (!(sizeValue instanceof Integer) || (Integer) sizeValue < MINIMUM_SIZE) {
+				return -1;
+			}
+
+			int length = (Integer) sizeValue;
+			set.reset(length);
+
+			Object node = first.resolve(list);
+			for (int i = 0; i < length; i++) {
+				if (!(node instanceof IObject)) {
+					return -1;
+				}
+
+				Object value = item.resolve((IObject) node);
+				if (!(value instanceof IObject) || !set.add(((IObject) value).getObjectAddress())) {
+					return -1;
+				}
+
+				node = next.resolve((IObject) node);
+			}
+
+			return length;
+		}
+
+	}
+
+	private static final class Candidates {
+
+		private final ArrayInt listIds = new ArrayInt();
+		private final ArrayInt sizes = new ArrayInt();
+
+		Candidates merge(Candidates other) {
+			listIds.addAll(other.listIds);
+			sizes.addAll(other.sizes);
+			return this;
+		}
+
+	}
+
+	public static class ListToSetResult {
+
+		private final String list;
+		private final int size;
+		private final long retainedHeap;
+		private final int objectId;
+
+		public ListToSetResult(String list, int size, long retainedHeap, int objectId) {
+			this.list = list;
+			this.size = size;
+			this.retainedHeap = retainedHeap;
+			this.objectId = objectId;
+		}
+
+		public String getList() {
+			return list;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public long getRetainedHeap() {
+			return retainedHeap;
+		}
+
+		public int getObjectId() {
+			return objectId;
+		}
+
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.collection;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.ObjectSetContext;
+import co.senn.eclipse.mat.inspection.collection.ListToSetInspection.ListToSetResult;
+
+/**
+ * Lists holding only unique, non-null items, one row per list, largest first.
+ */
+final class ListToSetTable implements IResultTable {
+
+	// @formatter:off
+	static final Column[] COLUMNS = {
+			new Column("List"),
+			new Column("Size", Integer.class).sorting(Column.SortDirection.DESC),
+			new Column("Retained Heap", Long.class)
+	};
+	// @formatter:on
+
+	private final List<ListToSetResult> rows;
+
+	ListToSetTable(List<ListToSetResult> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		ListToSetResult result = (ListToSetResult) row;
+		switch (columnIndex) {
+		case 0:
+			return result.getList();
+		case 1:
+			return result.getSize();
+		case 2:
+			return result.getRetainedHeap();
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return new ObjectSetContext(new int[] { ((ListToSetResult) row).getObjectId() });
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.export;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Writes rows of a fixed set of columns to a structured format as they come,
+ * without holding on to them. Writers may buffer, so long-running exports
+ * should {@linkplain #flush() flush} after each unit of work.
+ */
+public interface IRowWriter extends Closeable, Flushable {
+
+	/**
+	 * Starts the output with the names of the columns every row will have.
+	 */
+	void begin(String[] columns) throws IOException;
+
+	/**
+	 * Writes one row, with one value per column (numbers, booleans and
+	 * strings are written as such, other values as their string form).
+	 */
+	void row(Object... values) throws IOException;
+
+}
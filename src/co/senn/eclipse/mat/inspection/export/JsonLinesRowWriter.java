@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes JSON Lines, one object per row keyed by column name. Columns are
+ * always written in the same order, and {@code null} values are written as
+ * {@code null} rather than left out, so every line has the same keys.
+ */
+public final class JsonLinesRowWriter implements IRowWriter {
+
+	private final Writer out;
+	private String[] keys;
+
+	public JsonLinesRowWriter(Writer out) {
+		this.out = out;
+	}
+
+	@Override
+	public void begin(String[] columns) {
+		keys = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			keys[i] = quote(columns[i]);
+		}
+	}
+
+	@Override
+	public void row(Object... values) throws IOException {
+		out.write('{');
+		for (int i = 0; i < keys.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			out.write(keys[i]);
+			out.write(':');
+			out.write(toJson(i < values.length ? values[i] : null));
+		}
+		out.write("}\n");
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private static String toJson(Object value) {
+		if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+			return value.toString();
+		}
+		if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+			return value.toString();
+		}
+		return quote(value == null ? null : value.toString());
+	}
+
+	/**
+	 * @return the value as a JSON string literal, or {@code null}
+	 */
+	public static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+
+		StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.export;
+
+import java.io.IOException;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IResult;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.results.TextResult;
+
+/**
+ * Exports inspection results row by row to an {@link IRowWriter}.
+ * <p>
+ * The schema of a table is its columns, which every inspection declares as
+ * constants, so the same inspection always exports the same columns in the
+ * same order. Text results are exported as a table of their lines, with a
+ * {@value #LINE} and a {@value #TEXT} column. Rows are read from the result
+ * one at a time and handed to the writer straight away, so exporting takes no
+ * memory beyond the result itself.
+ */
+public final class ResultExporter {
+
+	static final String LINE = "Line";
+	static final String TEXT = "Text";
+
+	private ResultExporter() {
+	}
+
+	/**
+	 * @return whether the result can be exported
+	 */
+	public static boolean isExportable(IResult result) {
+		return result instanceof IResultTable || result instanceof TextResult;
+	}
+
+	/**
+	 * @return the number of rows written
+	 * @throws IllegalArgumentException if the result cannot be exported
+	 */
+	public static int export(IResult result, IRowWriter writer) throws IOException {
+		if (result instanceof TextResult) {
+			writer.begin(new String[] { LINE, TEXT });
+			String[] lines = ((TextResult) result).getText().split("\r?\n", -1);
+			for (int i = 0; i < lines.length; i++) {
+				writer.row(i + 1, lines[i]);
+			}
+			return lines.length;
+		}
+		if (!(result instanceof IResultTable)) {
+			throw new IllegalArgumentException("Cannot export " + result);
+		}
+
+		IResultTable table = (IResultTable) result;
+		Column[] columns = table.getColumns();
+		begin(columns, writer);
+
+		// One array is reused for every row, the writer does not keep it
+		Object[] values = new Object[columns.length];
+		int rows = table.getRowCount();
+		for (int i = 0; i < rows; i++) {
+			Object row = table.getRow(i);
+			for (int column = 0; column < columns.length; column++) {
+				values[column] = table.getColumnValue(row, column);
+			}
+			writer.row(values);
+		}
+		return rows;
+	}
+
+	/**
+	 * Writes the columns of a table without any rows, for a run that found
+	 * nothing.
+	 */
+	public static void begin(Column[] columns, IRowWriter writer) throws IOException {
+		String[] names = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			names[i] = columns[i].getLabel();
+		}
+		writer.begin(names);
+	}
+
+}
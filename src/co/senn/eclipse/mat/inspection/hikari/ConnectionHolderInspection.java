@@ -0,0 +1,335 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.hikari;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayInt;
+import org.eclipse.mat.collect.HashMapIntLong;
+import org.eclipse.mat.collect.HashMapIntObject;
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.InspectionResult;
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.ThreadStackIndex;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+import co.senn.eclipse.mat.inspection.sql.StatementDescriber;
+import co.senn.eclipse.mat.inspection.sql.StatementScan;
+import co.senn.eclipse.mat.inspection.tomcat.HTTPRequestScan;
+import co.senn.eclipse.mat.inspection.tomcat.MessageBytesDecoder;
+
+/**
+ * Reports which threads hold the connections borrowed from HikariCP pools,
+ * what SQL is open on each connection and which HTTP request each thread is
+ * serving.
+ * <p>
+ * HikariCP does not record who borrowed a connection, so the borrower is the
+ * thread with the pool entry, the driver connection or a connection proxy
+ * (or an object directly holding one) as a local variable in its stack. The
+ * joins go through object ID indexes built once: locals to threads
+ * ({@link ThreadStackIndex}), driver connections to open statements, and
+ * threads to the Tomcat requests in their stack. Dumps without stack traces
+ * can only report the pool and SQL of each connection.
+ */
+public class ConnectionHolderInspection extends AbstractInspection implements ITabular {
+
+	private static final String PROXY_CONNECTION = "com.zaxxer.hikari.pool.ProxyConnection";
+	private static final String UNKNOWN = "<unknown>";
+
+	private final FieldPath poolName = FieldPath.compile("config.poolName");
+	private final PoolEntries poolEntries = new PoolEntries();
+	private final FieldPath connection = FieldPath.compile("connection");
+
+	private final FieldPath startTime = FieldPath.compile("startTime");
+	private final FieldPath method = FieldPath.compile("methodMB");
+	private final FieldPath uri = FieldPath.compile("uriMB");
+
+	@Override
+	public Column[] getColumns() {
+		return HeldConnectionTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		if (!PackageIndex.get(snapshot).hasInstances("com.zaxxer.hikari.pool")) {
+			return null;
+		}
+
+		HikariPoolScan pools = SharedScan.get(snapshot, HikariPoolScan.class, listener);
+		List<HeldConnectionResult> results = new ArrayList<>();
+		int waiters = 0;
+		for (int i = 0; i < pools.size(); i++) {
+			IObject pool = snapshot.getObject(pools.getPool(i));
+			String name = poolName.resolveString(pool);
+			waiters += pools.getWaiters(i);
+			for (IObject entry : getInUseEntries(snapshot, pool)) {
+				Object value = connection.resolve(entry);
+				int connectionId = value instanceof IObject ? ((IObject) value).getObjectId() : -1;
+				results.add(new HeldConnectionResult(name != null ? name : pool.getTechnicalName(),
+						entry.getObjectId(), connectionId));
+			}
+		}
+		if (results.isEmpty()) {
+			return null;
+		}
+
+		int[] openStatements = SharedScan.get(snapshot, StatementScan.class, listener).getStatements();
+		int[] requests = SharedScan.get(snapshot, HTTPRequestScan.class, listener).getRequests();
+		ThreadStackIndex threads = ThreadStackIndex.get(snapshot);
+
+		listener.subTask("Indexing open statements");
+		StatementDescriber describer = new StatementDescriber();
+		HashMapIntObject<ArrayInt> statementsByConnection = indexStatements(snapshot, openStatements,
+				describer, listener);
+
+		listener.subTask("Indexing requests");
+		HashMapIntLong requestsByThread = indexRequests(snapshot, requests, threads);
+
+		MessageBytesDecoder decoder = new MessageBytesDecoder();
+		int identified = 0;
+		for (HeldConnectionResult result : results) {
+			IObject entry = snapshot.getObject(result.entryId);
+			if (result.connectionId >= 0) {
+				result.connection = snapshot.getObject(result.connectionId).getTechnicalName();
+
+				ArrayInt statements = statementsByConnection.get(result.connectionId);
+				if (statements != null) {
+					result.statements = statements.size();
+					result.sql = describer.getSql(snapshot.getObject(statements.get(statements.size() - 1)));
+				}
+			}
+
+			int threadId = findThread(snapshot, entry, result.connectionId, threads);
+			if (threadId < 0) {
+				continue;
+			}
+
+			identified++;
+			result.threadId = threadId;
+			IObject thread = snapshot.getObject(threadId);
+			result.thread = thread.getClassSpecificName() != null ? thread.getClassSpecificName()
+					: thread.getTechnicalName();
+			if (requestsByThread.containsKey(threadId)) {
+				IObject request = snapshot.getObject((int) requestsByThread.get(threadId));
+				result.request = decoder.decode(request, method) + " " + decoder.decode(request, uri);
+			}
+		}
+
+		String summary = String.format("Found %,d connections in use, %,d of them held by an identified thread",
+				results.size(), identified);
+		if (threads.isEmpty()) {
+			summary += " (the dump has no stack traces)";
+		}
+		if (waiters > 0) {
+			return new InspectionResult(new HeldConnectionTable(results),
+					summary + ", with " + waiters + " threads awaiting a connection", InspectionResultSeverity.WARN);
+		}
+		return new InspectionResult(new HeldConnectionTable(results), summary, InspectionResultSeverity.INFO);
+	}
+
+	private List<IObject> getInUseEntries(ISnapshot snapshot, IObject pool) throws SnapshotException {
+		List<IObject> entries = new ArrayList<>();
+		for (IObject entry : poolEntries.getEntries(snapshot, pool)) {
+			if (poolEntries.getState(entry) == PoolEntries.STATE_IN_USE) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the driver connections' open statements (proxies excluded), by
+	 *         connection object ID
+	 */
+	private static HashMapIntObject<ArrayInt> indexStatements(ISnapshot snapshot, int[] statements,
+			StatementDescriber describer, IProgressListener listener) throws SnapshotException {
+		return ParallelScan.reduce(statements, HashMapIntObject<ArrayInt>::new, (partial, statementId) -> {
+			IObject statement = snapshot.getObject(statementId);
+			if (describer.unwrap(statement).getObjectId() != statementId) {
+				return;
+			}
+
+			int connectionId = describer.getConnectionId(statement);
+			if (connectionId >= 0) {
+				ArrayInt objectIds = partial.get(connectionId);
+				if (objectIds == null) {
+					objectIds = new ArrayInt();
+					partial.put(connectionId, objectIds);
+				}
+				objectIds.add(statementId);
+			}
+		}, (left, right) -> {
+			for (int connectionId : right.getAllKeys()) {
+				ArrayInt objectIds = left.get(connectionId);
+				if (objectIds == null) {
+					left.put(connectionId, right.get(connectionId));
+				} else {
+					objectIds.addAll(right.get(connectionId));
+				}
+			}
+			return left;
+		}, listener);
+	}
+
+	/**
+	 * @return the in-flight request each thread is serving, by thread object
+	 *         ID, found through the request, the connector request wrapping it
+	 *         or the facade wrapping that in the thread's stack
+	 */
+	private HashMapIntLong indexRequests(ISnapshot snapshot, int[] requests, ThreadStackIndex threads)
+			throws SnapshotException {
+		HashMapIntLong requestsByThread = new HashMapIntLong();
+		if (threads.isEmpty()) {
+			return requestsByThread;
+		}
+
+		for (int requestId : requests) {
+			Object start = startTime.resolve(snapshot.getObject(requestId));
+			if (!(start instanceof Long) || (Long) start <= 0) {
+				continue; // Recycled
+			}
+
+			int threadId = findThread(snapshot, requestId, 2, threads);
+			if (threadId >= 0 && !requestsByThread.containsKey(threadId)) {
+				requestsByThread.put(threadId, requestId);
+			}
+		}
+		return requestsByThread;
+	}
+
+	private static int findThread(ISnapshot snapshot, IObject entry, int connectionId, ThreadStackIndex threads)
+			throws SnapshotException {
+		if (threads.isEmpty()) {
+			return -1;
+		}
+
+		int threadId = threads.getThreadId(entry.getObjectId());
+		if (threadId < 0 && connectionId >= 0) {
+			threadId = threads.getThreadId(connectionId);
+		}
+		if (threadId >= 0) {
+			return threadId;
+		}
+
+		// Applications hold the proxy handed out by the pool, or something wrapping it
+		for (int referrerId : snapshot.getInboundRefererIds(entry.getObjectId())) {
+			if (snapshot.getClassOf(referrerId).doesExtend(PROXY_CONNECTION)) {
+				threadId = findThread(snapshot, referrerId, 1, threads);
+				if (threadId >= 0) {
+					return threadId;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the thread with the object, or an object up to {@code depth}
+	 *         inbound references away, in its stack, or {@code -1}
+	 */
+	private static int findThread(ISnapshot snapshot, int objectId, int depth, ThreadStackIndex threads)
+			throws SnapshotException {
+		int threadId = threads.getThreadId(objectId);
+		if (threadId >= 0 || depth == 0) {
+			return threadId;
+		}
+
+		for (int referrerId : snapshot.getInboundRefererIds(objectId)) {
+			threadId = findThread(snapshot, referrerId, depth - 1, threads);
+			if (threadId >= 0) {
+				return threadId;
+			}
+		}
+		return -1;
+	}
+
+	public static class HeldConnectionResult {
+
+		private final String pool;
+		private final int entryId;
+		private final int connectionId;
+		private String connection;
+		private int threadId = -1;
+		private String thread;
+		private String request;
+		private int statements;
+		private String sql;
+
+		public HeldConnectionResult(String pool, int entryId, int connectionId) {
+			this.pool = pool;
+			this.entryId = entryId;
+			this.connectionId = connectionId;
+		}
+
+		public String getPool() {
+			return pool;
+		}
+
+		public String getConnection() {
+			return connection;
+		}
+
+		/**
+		 * @return the name of the thread holding the connection, or
+		 *         {@value ConnectionHolderInspection#UNKNOWN}
+		 */
+		public String getThread() {
+			return thread != null ? thread : UNKNOWN;
+		}
+
+		/**
+		 * @return the method and URI of the HTTP request the thread is
+		 *         serving, or {@code null} if none was found
+		 */
+		public String getRequest() {
+			return request;
+		}
+
+		/**
+		 * @return the number of statements open on the connection
+		 */
+		public int getStatements() {
+			return statements;
+		}
+
+		/**
+		 * @return the SQL of one of the statements open on the connection, or
+		 *         {@code null}
+		 */
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * @return the object IDs of the pool entry and, if known, the thread
+		 */
+		public int[] getObjectIds() {
+			return threadId >= 0 ? new int[] { entryId, threadId } : new int[] { entryId };
+		}
+
+	}
+
+}
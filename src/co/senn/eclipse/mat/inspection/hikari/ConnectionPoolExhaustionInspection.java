@@ -15,46 +15,268 @@
  */
 package co.senn.eclipse.mat.inspection.hikari;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-import org.eclipse.mat.query.results.TextResult;
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.query.Column;
 import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IClass;
 import org.eclipse.mat.snapshot.model.IObject;
 import org.eclipse.mat.util.IProgressListener;
 
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
 import co.senn.eclipse.mat.inspection.InspectionResult;
-import co.senn.eclipse.mat.inspection.api.IInspection;
-import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.SharedScan;
 import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
-import co.senn.eclipse.mat.inspection.util.InspectionUtil;
-import co.senn.eclipse.mat.inspection.util.PrimitiveValueUtil;
+import co.senn.eclipse.mat.inspection.export.ITabular;
 
-public class ConnectionPoolExhaustionInspection implements IInspection {
+/**
+ * Reports the configuration and state of every HikariCP pool: its limits,
+ * its connections by state, the threads awaiting one, and how long the
+ * oldest borrowed connection has been out.
+ * <p>
+ * HikariCP times connections with a monotonic clock (nanoseconds, or
+ * milliseconds on macOS), not the wall clock, so borrow ages are measured
+ * against the most recent activity recorded by any of the pool's
+ * connections rather than the time of the dump. They are lower bounds.
+ */
+public class ConnectionPoolExhaustionInspection extends AbstractInspection implements ITabular {
+
+	private static final String MILLISECOND_CLOCK = "com.zaxxer.hikari.util.ClockSource$MillisecondClockSource";
+
+	private final PoolEntries poolEntries = new PoolEntries();
+
+	private final FieldPath poolName = FieldPath.compile("poolName");
+	private final FieldPath maxPoolSize = FieldPath.compile("config.maxPoolSize");
+	private final FieldPath minIdle = FieldPath.compile("config.minIdle");
+	private final FieldPath connectionTimeout = FieldPath.compile("config.connectionTimeout");
+	private final FieldPath leakDetectionThreshold = FieldPath.compile("config.leakDetectionThreshold");
+	private final FieldPath lastAccessed = FieldPath.compile("lastAccessed");
+	private final FieldPath lastBorrowed = FieldPath.optional("lastBorrowed");
 
 	@Override
-	public IInspectionResult execute(ISnapshot snapshot, IProgressListener listener) throws Exception {
-		Map<IObject, Integer> waitersByPool = new HashMap<>();
-		boolean found = InspectionUtil.forEachObjectOfType("com.zaxxer.hikari.pool.HikariPool", true, snapshot, object -> {
-			Object waiters = object.resolveValue("connectionBag.waiters.value");
-			PrimitiveValueUtil.tryParseInt(waiters, i -> {
-				if (i > 0) {
-					waitersByPool.put(object, i);
-				}
-			});
-		});
+	public Column[] getColumns() {
+		return PoolTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		if (!PackageIndex.get(snapshot).hasInstances("com.zaxxer.hikari.pool")) {
+			return null;
+		}
 
-		if (!found || waitersByPool.size() == 0) {
+		HikariPoolScan pools = SharedScan.get(snapshot, HikariPoolScan.class, listener);
+		if (pools.size() == 0) {
 			return null;
 		}
-		
-		StringBuilder sb = new StringBuilder();
-		sb.append("Found ").append(waitersByPool.size()).append(" pool(s) with threads awaiting connections:\n");
-		waitersByPool.forEach((object, waiters) -> {
-			sb.append("\n").append(object).append(": ").append(waiters).append(" threads awaiting a connection");
-		});
-		
-		return new InspectionResult(new TextResult(sb.toString()), "", InspectionResultSeverity.WARN);
+
+		boolean millisecondClock = isMillisecondClock(snapshot);
+		List<PoolResult> results = new ArrayList<>(pools.size());
+		int exhausted = 0;
+		int leaking = 0;
+		for (int i = 0; i < pools.size() && !InspectionBudget.checkpoint(listener); i++) {
+			PoolResult result = read(snapshot, snapshot.getObject(pools.getPool(i)), millisecondClock);
+			result.waiters = pools.getWaiters(i);
+			results.add(result);
+			if (result.isExhausted()) {
+				exhausted++;
+			}
+			if (result.getPossibleLeaks() > 0) {
+				leaking++;
+			}
+		}
+
+		if (exhausted == 0 && leaking == 0) {
+			return new InspectionResult(new PoolTable(results), "Found " + results.size() + " connection pools",
+					InspectionResultSeverity.INFO);
+		}
+		List<String> findings = new ArrayList<>();
+		if (exhausted > 0) {
+			findings.add(exhausted + " exhausted pool(s) with threads awaiting a connection");
+		}
+		if (leaking > 0) {
+			findings.add(leaking + " pool(s) with connections borrowed longer than the leak detection threshold");
+		}
+		return new InspectionResult(new PoolTable(results), "Found " + String.join(" and ", findings),
+				InspectionResultSeverity.WARN);
+	}
+
+	private PoolResult read(ISnapshot snapshot, IObject pool, boolean millisecondClock) throws SnapshotException {
+		String name = poolName.resolveString(pool);
+		PoolResult result = new PoolResult(pool.getObjectId(), name != null ? name : pool.getTechnicalName());
+		result.maximumPoolSize = toLong(maxPoolSize.resolve(pool));
+		result.minimumIdle = toLong(minIdle.resolve(pool));
+		result.connectionTimeout = toLong(connectionTimeout.resolve(pool));
+		result.leakDetectionThreshold = toLong(leakDetectionThreshold.resolve(pool));
+
+		List<Long> borrowed = new ArrayList<>();
+		long latest = Long.MIN_VALUE;
+		for (IObject entry : poolEntries.getEntries(snapshot, pool)) {
+			long accessed = toLong(lastAccessed.resolve(entry));
+			long borrowedAt = toLong(lastBorrowed.resolve(entry));
+			latest = Math.max(latest, Math.max(accessed, borrowedAt));
+
+			switch (poolEntries.getState(entry)) {
+			case PoolEntries.STATE_NOT_IN_USE:
+				result.idle++;
+				break;
+			case PoolEntries.STATE_IN_USE:
+				result.active++;
+				// Older versions only record when a connection was last used
+				borrowed.add(borrowedAt > 0 ? borrowedAt : accessed);
+				break;
+			case PoolEntries.STATE_RESERVED:
+				result.reserved++;
+				break;
+			case PoolEntries.STATE_REMOVED:
+			default:
+				continue;
+			}
+			result.total++;
+		}
+
+		for (long time : borrowed) {
+			if (time <= 0) {
+				continue;
+			}
+
+			long age = latest - time;
+			if (!millisecondClock) {
+				age /= 1_000_000;
+			}
+			result.oldestBorrow = Math.max(result.oldestBorrow, age);
+			if (result.leakDetectionThreshold > 0 && age > result.leakDetectionThreshold) {
+				result.possibleLeaks++;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isMillisecondClock(ISnapshot snapshot) throws SnapshotException {
+		Collection<IClass> classes = snapshot.getClassesByName(MILLISECOND_CLOCK, false);
+		if (classes != null) {
+			for (IClass clazz : classes) {
+				if (clazz.getNumberOfObjects() > 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Number ? ((Number) value).longValue() : -1;
+	}
+
+	public static class PoolResult {
+
+		private final int objectId;
+		private final String name;
+		private long maximumPoolSize = -1;
+		private long minimumIdle = -1;
+		private long connectionTimeout = -1;
+		private long leakDetectionThreshold = -1;
+		private int total;
+		private int active;
+		private int idle;
+		private int reserved;
+		private int waiters;
+		private long oldestBorrow = -1;
+		private int possibleLeaks;
+
+		public PoolResult(int objectId, String name) {
+			this.objectId = objectId;
+			this.name = name;
+		}
+
+		public int getObjectId() {
+			return objectId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the configured maximum pool size, or -1 if unknown
+		 */
+		public long getMaximumPoolSize() {
+			return maximumPoolSize;
+		}
+
+		/**
+		 * @return the configured minimum number of idle connections, or -1 if
+		 *         unknown
+		 */
+		public long getMinimumIdle() {
+			return minimumIdle;
+		}
+
+		/**
+		 * @return the configured connection timeout in milliseconds, or -1 if
+		 *         unknown
+		 */
+		public long getConnectionTimeout() {
+			return connectionTimeout;
+		}
+
+		/**
+		 * @return the configured leak detection threshold in milliseconds (0
+		 *         if disabled), or -1 if unknown
+		 */
+		public long getLeakDetectionThreshold() {
+			return leakDetectionThreshold;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public int getActive() {
+			return active;
+		}
+
+		public int getIdle() {
+			return idle;
+		}
+
+		public int getReserved() {
+			return reserved;
+		}
+
+		public int getWaiters() {
+			return waiters;
+		}
+
+		/**
+		 * @return how long the longest borrowed connection has been out, in
+		 *         milliseconds (a lower bound), or -1 if none is borrowed
+		 */
+		public long getOldestBorrow() {
+			return oldestBorrow;
+		}
+
+		/**
+		 * @return the number of connections borrowed for longer than the leak
+		 *         detection threshold
+		 */
+		public int getPossibleLeaks() {
+			return possibleLeaks;
+		}
+
+		/**
+		 * @return whether every connection is borrowed and threads are
+		 *         waiting for one
+		 */
+		public boolean isExhausted() {
+			return waiters > 0 && (maximumPoolSize < 0 || active >= maximumPoolSize);
+		}
+
 	}
 
 }
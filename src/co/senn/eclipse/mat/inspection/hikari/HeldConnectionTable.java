@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.hikari;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.ObjectSetContext;
+import co.senn.eclipse.mat.inspection.hikari.ConnectionHolderInspection.HeldConnectionResult;
+
+/**
+ * Borrowed connections, one row each, with the thread holding it, the HTTP
+ * request that thread serves and the SQL open on the connection.
+ */
+final class HeldConnectionTable implements IResultTable {
+
+	// @formatter:off
+	static final Column[] COLUMNS = {
+			new Column("Pool"),
+			new Column("Connection"),
+			new Column("Thread"),
+			new Column("HTTP Request"),
+			new Column("Open Statements", Integer.class),
+			new Column("SQL")
+	};
+	// @formatter:on
+
+	private final List<HeldConnectionResult> rows;
+
+	HeldConnectionTable(List<HeldConnectionResult> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		HeldConnectionResult result = (HeldConnectionResult) row;
+		switch (columnIndex) {
+		case 0:
+			return result.getPool();
+		case 1:
+			return result.getConnection();
+		case 2:
+			return result.getThread();
+		case 3:
+			return result.getRequest();
+		case 4:
+			return result.getStatements();
+		case 5:
+			return result.getSql();
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return new ObjectSetContext(((HeldConnectionResult) row).getObjectIds());
+	}
+
+}
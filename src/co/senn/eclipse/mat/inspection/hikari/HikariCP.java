@@ -18,13 +18,19 @@ package co.senn.eclipse.mat.inspection.hikari;
 import org.eclipse.mat.SnapshotException;
 import org.eclipse.mat.snapshot.ISnapshot;
 
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.SharedScan;
 import co.senn.eclipse.mat.inspection.api.ITechnology;
 
 public class HikariCP implements ITechnology {
 
+	static {
+		SharedScan.register(HikariPoolScan.class, HikariPoolScan::new);
+	}
+
 	@Override
 	public boolean isPresent(ISnapshot snapshot) throws SnapshotException {
-		return ITechnology.isPackagePresent(snapshot, "com.zaxxer.hikari");
+		return PackageIndex.get(snapshot).isPresent("com.zaxxer.hikari");
 	}
 
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.hikari;
+
+import org.eclipse.mat.collect.ArrayInt;
+
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.IScanAggregate;
+import co.senn.eclipse.mat.inspection.ObjectScan;
+import co.senn.eclipse.mat.inspection.util.PrimitiveValueUtil;
+
+/**
+ * The number of threads awaiting a connection from every {@code HikariPool}.
+ */
+public final class HikariPoolScan implements IScanAggregate {
+
+	static final String TYPE = "com.zaxxer.hikari.pool.HikariPool";
+
+	private final FieldPath waitersValue = FieldPath.compile("connectionBag.waiters.value");
+
+	private final ArrayInt pools = new ArrayInt();
+	private final ArrayInt waiters = new ArrayInt();
+
+	@Override
+	public void subscribe(ObjectScan scan) {
+		scan.register(TYPE, object -> {
+			pools.add(object.getObjectId());
+
+			Object value = waitersValue.resolve(object);
+			int[] parsed = { 0 };
+			PrimitiveValueUtil.tryParseInt(value, i -> parsed[0] = i);
+			waiters.add(parsed[0]);
+		});
+	}
+
+	int size() {
+		return pools.size();
+	}
+
+	int getPool(int index) {
+		return pools.get(index);
+	}
+
+	int getWaiters(int index) {
+		return waiters.get(index);
+	}
+
+}
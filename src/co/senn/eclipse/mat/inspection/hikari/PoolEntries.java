@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.hikari;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IObjectArray;
+
+import co.senn.eclipse.mat.inspection.FieldPath;
+
+/**
+ * Reads the {@code PoolEntry}s of a {@code HikariPool}'s
+ * {@code ConcurrentBag} and their state.
+ * <p>
+ * Instances are thread-safe but must not be shared between snapshots (see
+ * {@link FieldPath}).
+ */
+final class PoolEntries {
+
+	// com.zaxxer.hikari.util.IConcurrentBagEntry
+	static final int STATE_NOT_IN_USE = 0;
+	static final int STATE_IN_USE = 1;
+	static final int STATE_REMOVED = -1;
+	static final int STATE_RESERVED = -2;
+
+	private final FieldPath sharedList = FieldPath.compile("connectionBag.sharedList.array");
+	private final FieldPath state = FieldPath.compile("state");
+
+	/**
+	 * @return every entry of the pool, in the bag's order
+	 */
+	List<IObject> getEntries(ISnapshot snapshot, IObject pool) throws SnapshotException {
+		List<IObject> entries = new ArrayList<>();
+		Object value = sharedList.resolve(pool);
+		if (value instanceof IObjectArray) {
+			IObjectArray array = (IObjectArray) value;
+			for (long address : array.getReferenceArray(0, array.getLength())) {
+				if (address != 0) {
+					entries.add(snapshot.getObject(snapshot.mapAddressToId(address)));
+				}
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the entry's state, or {@link Integer#MIN_VALUE} if unknown
+	 */
+	int getState(IObject entry) throws SnapshotException {
+		Object value = state.resolve(entry);
+		return value instanceof Integer ? (Integer) value : Integer.MIN_VALUE;
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.hikari;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.ObjectSetContext;
+import co.senn.eclipse.mat.inspection.hikari.ConnectionPoolExhaustionInspection.PoolResult;
+
+/**
+ * Connection pools, one row each. Unknown values are left empty, and times
+ * are in milliseconds.
+ */
+final class PoolTable implements IResultTable {
+
+	// @formatter:off
+	static final Column[] COLUMNS = {
+			new Column("Pool"),
+			new Column("Max Size", Long.class),
+			new Column("Min Idle", Long.class),
+			new Column("Total", Integer.class),
+			new Column("Active", Integer.class),
+			new Column("Idle", Integer.class),
+			new Column("Reserved", Integer.class),
+			new Column("Waiters", Integer.class),
+			new Column("Connection Timeout", Long.class).noTotals(),
+			new Column("Oldest Borrow", Long.class).noTotals(),
+			new Column("Leak Threshold", Long.class).noTotals(),
+			new Column("Possible Leaks", Integer.class),
+			new Column("Exhausted", Boolean.class)
+	};
+	// @formatter:on
+
+	private final List<PoolResult> rows;
+
+	PoolTable(List<PoolResult> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		PoolResult result = (PoolResult) row;
+		switch (columnIndex) {
+		case 0:
+			return result.getName();
+		case 1:
+			return known(result.getMaximumPoolSize());
+		case 2:
+			return known(result.getMinimumIdle());
+		case 3:
+			return result.getTotal();
+		case 4:
+			return result.getActive();
+		case 5:
+			return result.getIdle();
+		case 6:
+			return result.getReserved();
+		case 7:
+			return result.getWaiters();
+		case 8:
+			return known(result.getConnectionTimeout());
+		case 9:
+			return known(result.getOldestBorrow());
+		case 10:
+			return known(result.getLeakDetectionThreshold());
+		case 11:
+			return result.getPossibleLeaks();
+		case 12:
+			return result.isExhausted();
+		default:
+			return null;
+		}
+	}
+
+	private static Long known(long value) {
+		return value < 0 ? null : value;
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return new ObjectSetContext(new int[] { ((PoolResult) row).getObjectId() });
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.sql;
+
+/**
+ * The concrete JDBC classes of the common drivers and pools.
+ * <p>
+ * Heap dumps do not record which interfaces a class implements, so the
+ * {@code java.sql} interfaces have no instances as far as the snapshot is
+ * concerned. Scans register these classes instead (subclasses included).
+ */
+public final class JdbcTypes {
+
+	// @formatter:off
+	public static final String[] STATEMENTS = {
+			"org.postgresql.jdbc.PgStatement",
+			"com.mysql.cj.jdbc.StatementImpl", // MySQL Connector/J 8.x
+			"com.mysql.jdbc.StatementImpl", // MySQL Connector/J 5.x
+			"org.h2.jdbc.JdbcStatement",
+			"org.hsqldb.jdbc.JDBCStatementBase",
+			"oracle.jdbc.driver.OracleStatement",
+			"com.microsoft.sqlserver.jdbc.SQLServerStatement",
+			"org.apache.derby.impl.jdbc.EmbedStatement",
+			"net.sourceforge.jtds.jdbc.JtdsStatement",
+			"com.zaxxer.hikari.pool.ProxyStatement" // HikariCP (HikariProxy*Statement)
+	};
+
+	public static final String[] RESULT_SETS = {
+			"org.postgresql.jdbc.PgResultSet",
+			"com.mysql.cj.jdbc.result.ResultSetImpl", // MySQL Connector/J 8.x
+			"com.mysql.jdbc.ResultSetImpl", // MySQL Connector/J 5.x
+			"org.h2.jdbc.JdbcResultSet",
+			"org.hsqldb.jdbc.JDBCResultSet",
+			"oracle.jdbc.driver.OracleResultSetImpl", // Oracle 11g
+			"oracle.jdbc.driver.OracleResultSet", // Oracle 12c and later
+			"com.microsoft.sqlserver.jdbc.SQLServerResultSet",
+			"org.apache.derby.impl.jdbc.EmbedResultSet",
+			"com.zaxxer.hikari.pool.ProxyResultSet" // HikariCP (HikariProxyResultSet)
+	};
+	// @formatter:on
+
+	private JdbcTypes() {
+	}
+
+}
@@ -15,31 +15,223 @@
  */
 package co.senn.eclipse.mat.inspection.sql;
 
-import org.eclipse.mat.query.results.TextResult;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.query.Column;
 import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IObject;
 import org.eclipse.mat.util.IProgressListener;
 
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
 import co.senn.eclipse.mat.inspection.InspectionResult;
-import co.senn.eclipse.mat.inspection.api.IInspection;
-import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.RetainedHeap;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.TopGroups;
+import co.senn.eclipse.mat.inspection.TopGroups.Group;
 import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
-import co.senn.eclipse.mat.inspection.util.InspectionUtil;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+
+public class OpenStatementsInspection extends AbstractInspection implements ITabular {
+
+	private static final int SHALLOW_HEAP = 0;
 
-public class OpenStatementsInspection implements IInspection {
+	private static final StatementKey OTHER = new StatementKey(TopGroups.OTHER, -1, null);
+
+	// @formatter:off
+	private static final Comparator<Group<StatementKey>> ORDER = Comparator
+			.comparingInt((Group<StatementKey> g) -> g.getCount()).reversed()
+			.thenComparing(g -> g.getKey().type)
+			.thenComparingInt(g -> g.getKey().connectionId)
+			.thenComparing(g -> g.getKey().sql, Comparator.nullsFirst(Comparator.naturalOrder()));
+	// @formatter:on
 
 	@Override
-	public IInspectionResult execute(ISnapshot snapshot, IProgressListener listener) throws Exception {
-		StringBuilder sb = new StringBuilder();
+	public Column[] getColumns() {
+		return StatementTable.COLUMNS;
+	}
 
-		boolean found = InspectionUtil.forEachObjectOfType("java.sql.Statement", true, snapshot, s -> {
-			sb.append("\n").append(s);
-		});
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		int[] statements = SharedScan.get(snapshot, StatementScan.class, listener).getStatements();
+		if (statements.length == 0) {
+			return null;
+		}
 
-		if (!found) {
+		StatementDescriber describer = new StatementDescriber();
+		TopGroups<StatementKey> groups = group(snapshot, statements, describer, () -> new TopGroups<>(1), listener);
+		if (groups.isEmpty()) {
 			return null;
 		}
 
-		return new InspectionResult(new TextResult(sb.toString()), "", InspectionResultSeverity.INFO);
+		// Second pass for every statement of the rows shown, as their context
+		int limit = InspectionSettings.getMaxRows();
+		if (!groups.isComplete(limit)) {
+			Set<StatementKey> keys = groups.topKeys(limit, ORDER);
+			TopGroups<StatementKey> all = group(snapshot, statements, describer, () -> new TopGroups<>(1, keys),
+					listener);
+			if (!InspectionBudget.checkpoint(listener)) {
+				groups = all;
+			}
+		}
+
+		List<OpenStatementResult> results = new ArrayList<>();
+		for (Group<StatementKey> group : groups.top(limit, ORDER, OTHER)) {
+			results.add(new OpenStatementResult(group.getKey().type, group.getKey().connectionId, group.getKey().sql,
+					group.getCount(), group.getSum(SHALLOW_HEAP), group.getObjectIds()));
+		}
+
+		int retained = Math.min(results.size(), InspectionSettings.getRetainedHeapRows());
+		for (int i = 0; i < results.size(); i++) {
+			OpenStatementResult result = results.get(i);
+			if (result.connectionId >= 0) {
+				result.connection = snapshot.getObject(result.connectionId).getTechnicalName();
+			}
+			if (i < retained) {
+				// Computed on a sample of the statements and scaled up to the whole group
+				long retainedHeap = RetainedHeap.estimate(snapshot, result.getObjectIds(), result.count, listener);
+				if (retainedHeap < 0) {
+					retained = i;
+				} else {
+					result.retainedHeap = retainedHeap;
+				}
+			}
+		}
+
+		int count = 0;
+		for (OpenStatementResult result : results) {
+			count += result.getCount();
+		}
+		return new InspectionResult(new StatementTable(results), "Found " + count + " open statements",
+				InspectionResultSeverity.INFO);
+	}
+
+	/**
+	 * Groups the statements by {@link StatementKey}, in parallel.
+	 */
+	private static TopGroups<StatementKey> group(ISnapshot snapshot, int[] statements, StatementDescriber describer,
+			Supplier<TopGroups<StatementKey>> partials, IProgressListener listener) throws SnapshotException {
+		return ParallelScan.reduce(statements, partials, (partial, statementId) -> {
+			// Proxies (eg: HikariCP's) are skipped, the driver's statement is reported instead
+			IObject statement = snapshot.getObject(statementId);
+			if (describer.unwrap(statement) != statement) {
+				return;
+			}
+			// @formatter:off
+			StatementKey key = new StatementKey(
+					statement.getClazz().getName(),
+					describer.getConnectionId(statement),
+					describer.getSql(statement)
+			);
+			// @formatter:on
+			partial.add(key, statementId).add(SHALLOW_HEAP, snapshot.getHeapSize(statementId));
+		}, TopGroups::merge, listener);
+	}
+
+	/**
+	 * The driver class, owning connection and SQL text statements are grouped
+	 * by.
+	 */
+	private static final class StatementKey {
+
+		private final String type;
+		private final int connectionId;
+		private final String sql;
+		private final int hash;
+
+		StatementKey(String type, int connectionId, String sql) {
+			this.type = type;
+			this.connectionId = connectionId;
+			this.sql = sql;
+			this.hash = Objects.hash(type, connectionId, sql);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof StatementKey)) {
+				return false;
+			}
+
+			StatementKey other = (StatementKey) obj;
+			return hash == other.hash && connectionId == other.connectionId && type.equals(other.type)
+					&& Objects.equals(sql, other.sql);
+		}
+
+	}
+
+	public static class OpenStatementResult {
+
+		private final String type;
+		private final int connectionId;
+		private final String sql;
+		private final int count;
+		private final long shallowHeap;
+		private final int[] objectIds;
+		private String connection;
+		private Long retainedHeap;
+
+		public OpenStatementResult(String type, int connectionId, String sql, int count, long shallowHeap,
+				int[] objectIds) {
+			this.type = type;
+			this.connectionId = connectionId;
+			this.sql = sql;
+			this.count = count;
+			this.shallowHeap = shallowHeap;
+			this.objectIds = objectIds;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getConnection() {
+			return connection;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getShallowHeap() {
+			return shallowHeap;
+		}
+
+		/**
+		 * @return the retained heap, or {@code null} if it has not been computed
+		 */
+		public Long getRetainedHeap() {
+			return retainedHeap;
+		}
+
+		/**
+		 * @return the object IDs of the group's statements, or of a sample of
+		 *         them if there are more than
+		 *         {@link InspectionSettings#getSampleSize()}
+		 */
+		public int[] getObjectIds() {
+			return objectIds;
+		}
+
 	}
 
 }
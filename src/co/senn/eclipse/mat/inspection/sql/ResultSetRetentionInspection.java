@@ -0,0 +1,330 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.sql;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayInt;
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
+import co.senn.eclipse.mat.inspection.InspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.TopGroups;
+import co.senn.eclipse.mat.inspection.TopGroups.Group;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+
+/**
+ * Reports open JDBC result sets with the rows they have buffered, their
+ * retained heap and the SQL of their statement.
+ * <p>
+ * Drivers that read a whole result into memory (PgJDBC without a fetch size,
+ * MySQL Connector/J's static rows, Oracle's fetch buffers) are a common cause
+ * of {@code OutOfMemoryError}s. Result sets retaining more than
+ * {@linkplain InspectionSettings#getResultSetThreshold() the threshold} are
+ * flagged. Retained sizes are read in the same parallel pass that reads the
+ * rows, result sets are grouped by driver class and SQL, and the total for
+ * all result sets is computed as a single retained set.
+ */
+public class ResultSetRetentionInspection extends AbstractInspection implements ITabular {
+
+	private static final int ROWS = 0;
+	private static final int ROWS_KNOWN = 1;
+	private static final int RETAINED_HEAP = 2;
+	private static final int LARGE = 3;
+
+	private static final ResultSetKey OTHER = new ResultSetKey(TopGroups.OTHER, null);
+
+	// @formatter:off
+	private static final Comparator<Group<ResultSetKey>> ORDER = Comparator
+			.comparingLong((Group<ResultSetKey> g) -> g.getSum(RETAINED_HEAP)).reversed()
+			.thenComparing(g -> g.getKey().type)
+			.thenComparing(g -> g.getKey().sql, Comparator.nullsFirst(Comparator.naturalOrder()));
+	// @formatter:on
+
+	@Override
+	public Column[] getColumns() {
+		return ResultSetTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		int[] resultSets = SharedScan.get(snapshot, ResultSetScan.class, listener).getResultSets();
+		if (resultSets.length == 0) {
+			return null;
+		}
+
+		ResultSetReader reader = new ResultSetReader(InspectionSettings.getResultSetThreshold());
+		OpenResultSets open = read(snapshot, resultSets, reader, () -> new TopGroups<>(4), listener);
+		if (open.objectIds.isEmpty()) {
+			return null;
+		}
+
+		// Second pass over the open result sets for all of those of the rows shown, as their context
+		int limit = InspectionSettings.getMaxRows();
+		TopGroups<ResultSetKey> groups = open.groups;
+		if (!groups.isComplete(limit)) {
+			Set<ResultSetKey> keys = groups.topKeys(limit, ORDER);
+			TopGroups<ResultSetKey> all = read(snapshot, open.objectIds.toArray(), reader,
+					() -> new TopGroups<>(4, keys), listener).groups;
+			if (!InspectionBudget.checkpoint(listener)) {
+				groups = all;
+			}
+		}
+
+		// Result sets can share rows (eg: with their statement), so the total is not a sum
+		long totalRetainedHeap = snapshot.getHeapSize(snapshot.getRetainedSet(open.objectIds.toArray(), listener));
+
+		long large = 0;
+		List<ResultSetResult> results = new ArrayList<>();
+		for (Group<ResultSetKey> group : groups.top(limit, ORDER, OTHER)) {
+			large += group.getSum(LARGE);
+			// @formatter:off
+			results.add(new ResultSetResult(
+					group.getKey().type,
+					group.getKey().sql,
+					group.getCount(),
+					group.getSum(ROWS_KNOWN) > 0 ? group.getSum(ROWS) : -1,
+					group.getSum(RETAINED_HEAP),
+					group.getSum(LARGE) > 0,
+					group.getObjectIds()
+			));
+			// @formatter:on
+		}
+
+		long threshold = InspectionSettings.getResultSetThreshold();
+		if (large == 0) {
+			return new InspectionResult(new ResultSetTable(results),
+					String.format("Found %,d open result sets retaining %,d bytes", open.objectIds.size(),
+							totalRetainedHeap),
+					InspectionResultSeverity.INFO);
+		}
+		return new InspectionResult(new ResultSetTable(results),
+				String.format("Found %,d open result sets retaining %,d bytes, %,d of them more than %,d bytes each",
+						open.objectIds.size(), totalRetainedHeap, large, threshold),
+				InspectionResultSeverity.WARN);
+	}
+
+	private static OpenResultSets read(ISnapshot snapshot, int[] resultSets, ResultSetReader reader,
+			Supplier<TopGroups<ResultSetKey>> groups, IProgressListener listener) throws SnapshotException {
+		return ParallelScan.reduce(resultSets, () -> new OpenResultSets(groups.get()),
+				(partial, resultSetId) -> reader.read(snapshot, resultSetId, partial), OpenResultSets::merge,
+				listener);
+	}
+
+	/**
+	 * The open result sets of a partition: every object ID, for the total
+	 * retained heap, and the groups by driver class and SQL.
+	 */
+	private static final class OpenResultSets {
+
+		private final ArrayInt objectIds = new ArrayInt();
+		private final TopGroups<ResultSetKey> groups;
+
+		OpenResultSets(TopGroups<ResultSetKey> groups) {
+			this.groups = groups;
+		}
+
+		OpenResultSets merge(OpenResultSets other) {
+			objectIds.addAll(other.objectIds);
+			groups.merge(other.groups);
+			return this;
+		}
+
+	}
+
+	private static final class ResultSetKey {
+
+		private final String type;
+		private final String sql;
+
+		ResultSetKey(String type, String sql) {
+			this.type = type;
+			this.sql = sql;
+		}
+
+		@Override
+		public int hashCode() {
+			return type.hashCode() * 31 + Objects.hashCode(sql);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ResultSetKey)) {
+				return false;
+			}
+
+			ResultSetKey other = (ResultSetKey) obj;
+			return type.equals(other.type) && Objects.equals(sql, other.sql);
+		}
+
+	}
+
+	/**
+	 * Reads the buffered rows and owning statement of result sets.
+	 * <p>
+	 * Instances are thread-safe but must not be shared between snapshots (see
+	 * {@link FieldPath}).
+	 */
+	private static final class ResultSetReader {
+
+		private final StatementDescriber describer = new StatementDescriber();
+		private final long threshold;
+
+		// Proxies (eg: HikariCP's) are skipped, the driver's result set is reported instead
+		private final FieldPath delegate = FieldPath.optional("delegate");
+
+		// @formatter:off
+		private final FieldPath closed = FieldPath.firstOf(
+				"closed", // Oracle, H2
+				"isClosed" // MySQL Connector/J
+		);
+
+		private final FieldPath rows = FieldPath.firstOf(
+				"rows.size", // PgJDBC
+				"rowData.rows.size", // MySQL Connector/J (static rows)
+				"result.rows.size", // H2
+				"navigator.size", // HSQLDB
+				"statement.validRows" // Oracle (current fetch)
+		);
+
+		private final FieldPath statement = FieldPath.firstOf(
+				"statement", // PgJDBC, Oracle
+				"owningStatement", // MySQL Connector/J
+				"stat" // H2
+		);
+		// @formatter:on
+
+		ResultSetReader(long threshold) {
+			this.threshold = threshold;
+		}
+
+		/**
+		 * Adds the result set to {@code open}, unless it is a proxy or closed.
+		 */
+		void read(ISnapshot snapshot, int resultSetId, OpenResultSets open) throws SnapshotException {
+			IObject resultSet = snapshot.getObject(resultSetId);
+			if (delegate.resolve(resultSet) instanceof IObject) {
+				return;
+			}
+			if (Boolean.TRUE.equals(closed.resolve(resultSet))) {
+				return;
+			}
+
+			Object owner = statement.resolve(resultSet);
+			String sql = owner instanceof IObject ? describer.getSql(describer.unwrap((IObject) owner)) : null;
+
+			open.objectIds.add(resultSetId);
+			Group<ResultSetKey> group = open.groups.add(new ResultSetKey(resultSet.getClazz().getName(), sql),
+					resultSetId);
+			Object count = rows.resolve(resultSet);
+			if (count instanceof Integer) {
+				group.add(ROWS, (Integer) count);
+				group.add(ROWS_KNOWN, 1);
+			}
+			long retainedHeap = snapshot.getRetainedHeapSize(resultSetId);
+			group.add(RETAINED_HEAP, retainedHeap);
+			if (retainedHeap > threshold) {
+				group.add(LARGE, 1);
+			}
+		}
+
+	}
+
+	public static class ResultSetResult {
+
+		private final String type;
+		private final String sql;
+		private final int count;
+		private final long rows;
+		private final long retainedHeap;
+		private final boolean large;
+		private final int[] objectIds;
+
+		public ResultSetResult(String type, String sql, int count, long rows, long retainedHeap, boolean large,
+				int[] objectIds) {
+			this.type = type;
+			this.sql = sql;
+			this.count = count;
+			this.rows = rows;
+			this.retainedHeap = retainedHeap;
+			this.large = large;
+			this.objectIds = objectIds;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * @return the SQL of the owning statement, or {@code null} if unknown
+		 */
+		public String getSql() {
+			return sql;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the number of rows buffered, or -1 if the driver's buffer is
+		 *         not known
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		public long getRetainedHeap() {
+			return retainedHeap;
+		}
+
+		/**
+		 * @return whether any of the result sets retains more than the
+		 *         threshold
+		 */
+		public boolean isLarge() {
+			return large;
+		}
+
+		/**
+		 * @return the object IDs of the result sets, or of a sample of them if
+		 *         there are more than {@link InspectionSettings#getSampleSize()}
+		 */
+		public int[] getObjectIds() {
+			return objectIds;
+		}
+
+	}
+
+}
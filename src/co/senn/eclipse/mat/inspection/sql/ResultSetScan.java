@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.sql;
+
+import org.eclipse.mat.collect.ArrayInt;
+
+import co.senn.eclipse.mat.inspection.IScanAggregate;
+import co.senn.eclipse.mat.inspection.ObjectScan;
+
+/**
+ * The object IDs of every JDBC result set (see {@link JdbcTypes}).
+ */
+public final class ResultSetScan implements IScanAggregate {
+
+	private final ArrayInt resultSets = new ArrayInt();
+
+	@Override
+	public void subscribe(ObjectScan scan) {
+		for (String type : JdbcTypes.RESULT_SETS) {
+			scan.collect(type, resultSets);
+		}
+	}
+
+	int[] getResultSets() {
+		return resultSets.toArray();
+	}
+
+}
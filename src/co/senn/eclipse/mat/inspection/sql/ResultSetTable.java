@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.sql;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.ObjectSetContext;
+import co.senn.eclipse.mat.inspection.sql.ResultSetRetentionInspection.ResultSetResult;
+
+/**
+ * Open result sets, one row per driver class and SQL, largest retained heap
+ * first.
+ */
+final class ResultSetTable implements IResultTable {
+
+	// @formatter:off
+	static final Column[] COLUMNS = {
+			new Column("Result Set Class"),
+			new Column("SQL"),
+			new Column("Count", Integer.class),
+			new Column("Rows", Long.class),
+			new Column("Retained Heap", Long.class).sorting(Column.SortDirection.DESC),
+			new Column("Too Large", Boolean.class)
+	};
+	// @formatter:on
+
+	private final List<ResultSetResult> rows;
+
+	ResultSetTable(List<ResultSetResult> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		ResultSetResult result = (ResultSetResult) row;
+		switch (columnIndex) {
+		case 0:
+			return result.getType();
+		case 1:
+			return result.getSql();
+		case 2:
+			return result.getCount();
+		case 3:
+			return result.getRows() >= 0 ? result.getRows() : null;
+		case 4:
+			return result.getRetainedHeap();
+		case 5:
+			return result.isLarge();
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return new ObjectSetContext(((ResultSetResult) row).getObjectIds());
+	}
+
+}
@@ -18,15 +18,22 @@ package co.senn.eclipse.mat.inspection.sql;
 import org.eclipse.mat.SnapshotException;
 import org.eclipse.mat.snapshot.ISnapshot;
 
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.SharedScan;
 import co.senn.eclipse.mat.inspection.api.ITechnology;
 import co.senn.eclipse.mat.inspection.api.Ignore;
 
 @Ignore
 public class SQL implements ITechnology {
 
+	static {
+		SharedScan.register(StatementScan.class, StatementScan::new);
+		SharedScan.register(ResultSetScan.class, ResultSetScan::new);
+	}
+
 	@Override
 	public boolean isPresent(ISnapshot snapshot) throws SnapshotException {
-		return ITechnology.isPackagePresent(snapshot, "java.sql");
+		return PackageIndex.get(snapshot).isPresent("java.sql");
 	}
 
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.sql;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.model.IObject;
+
+import co.senn.eclipse.mat.inspection.FieldPath;
+
+/**
+ * Reads the owning connection and SQL text of JDBC statements, for the
+ * drivers that keep them.
+ * <p>
+ * Instances are thread-safe but must not be shared between snapshots (see
+ * {@link FieldPath}).
+ */
+public final class StatementDescriber {
+
+	/**
+	 * The longest SQL text kept, so that huge generated statements do not
+	 * blow up the result
+	 */
+	static final int MAX_SQL_LENGTH = 1024;
+
+	private static final int MAX_DELEGATES = 4;
+
+	// HikariCP (and similar) proxies wrap the driver's statement
+	private final FieldPath delegate = FieldPath.optional("delegate");
+
+	private final FieldPath connection = FieldPath.firstOf("connection", "conn" /* H2 */);
+
+	// @formatter:off
+	private final FieldPath sql = FieldPath.firstOf(
+			"preparedQuery.query.nativeQuery.nativeSql", // PgJDBC 42.x
+			"preparedQuery.key", // PgJDBC 9.4
+			"query.originalSql", // MySQL Connector/J 8.x
+			"originalSql", // MySQL Connector/J 5.x
+			"sqlObject.originalSql", // Oracle
+			"sqlStatement", // H2
+			"sql" // Others (eg: HSQLDB, jTDS)
+	);
+	// @formatter:on
+
+	/**
+	 * @return the driver's statement behind any proxies
+	 */
+	public IObject unwrap(IObject statement) throws SnapshotException {
+		IObject unwrapped = statement;
+		for (int i = 0; i < MAX_DELEGATES; i++) {
+			Object value = delegate.resolve(unwrapped);
+			if (!(value instanceof IObject)) {
+				break;
+			}
+			unwrapped = (IObject) value;
+		}
+		return unwrapped;
+	}
+
+	/**
+	 * @return the object ID of the statement's connection, or {@code -1} if
+	 *         unknown
+	 */
+	public int getConnectionId(IObject statement) throws SnapshotException {
+		Object value = connection.resolve(statement);
+		return value instanceof IObject ? ((IObject) value).getObjectId() : -1;
+	}
+
+	/**
+	 * @return the statement's SQL text (truncated to {@value #MAX_SQL_LENGTH}
+	 *         characters), or {@code null} if the driver does not keep it
+	 */
+	public String getSql(IObject statement) throws SnapshotException {
+		String value = sql.resolveString(statement);
+		if (value == null) {
+			return null;
+		}
+		return value.length() > MAX_SQL_LENGTH ? value.substring(0, MAX_SQL_LENGTH) + "..." : value;
+	}
+
+}
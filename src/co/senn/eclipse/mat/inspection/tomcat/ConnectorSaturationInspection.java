@@ -0,0 +1,317 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.SetInt;
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.annotations.CommandName;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IObjectArray;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.InspectionResult;
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+
+/**
+ * Checks whether Tomcat's connectors were saturated: thread pools running at
+ * their maximum size or queueing work, and endpoints at their connection
+ * limit.
+ * <p>
+ * Reports one row per connector endpoint with the state of its thread pool,
+ * plus one row per thread pool not owned by any endpoint.
+ */
+@CommandName("suspect:servlet-container-connector-saturation")
+public final class ConnectorSaturationInspection extends AbstractInspection implements ITabular {
+
+	// java.util.concurrent.ThreadPoolExecutor packs the worker count into ctl
+	private static final int COUNT_MASK = (1 << 29) - 1;
+
+	private final FieldPath name = FieldPath.compile("name");
+	private final FieldPath port = FieldPath.compile("port");
+	private final FieldPath running = FieldPath.compile("running");
+	private final FieldPath paused = FieldPath.compile("paused");
+	private final FieldPath maxConnections = FieldPath.compile("maxConnections");
+	private final FieldPath connectionCount = FieldPath.compile("connectionLimitLatch.count.value");
+	private final FieldPath executor = FieldPath.compile("executor");
+	private final FieldPath acceptor = FieldPath.optional("acceptor"); // Tomcat 9+
+	private final FieldPath acceptors = FieldPath.optional("acceptors"); // Tomcat 8.5
+	private final FieldPath poller = FieldPath.optional("poller"); // Tomcat 9+
+	private final FieldPath pollers = FieldPath.optional("pollers"); // Tomcat 8.5
+	private final FieldPath acceptorState = FieldPath.compile("state.name");
+	private final FieldPath pollerClose = FieldPath.compile("close");
+
+	private final FieldPath ctl = FieldPath.compile("ctl.value");
+	private final FieldPath corePoolSize = FieldPath.compile("corePoolSize");
+	private final FieldPath maximumPoolSize = FieldPath.compile("maximumPoolSize");
+	private final FieldPath submittedCount = FieldPath.compile("submittedCount.value");
+	private final FieldPath queueSize = FieldPath.compile("workQueue.count.value");
+
+	@Override
+	public Column[] getColumns() {
+		return ConnectorTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		if (!PackageIndex.get(snapshot).hasInstances("org.apache.tomcat.util")) {
+			return null;
+		}
+
+		ConnectorScan scan = SharedScan.get(snapshot, ConnectorScan.class, listener);
+		List<ConnectorResult> results = new ArrayList<>();
+		SetInt ownedExecutors = new SetInt();
+
+		for (int endpointId : scan.getEndpoints()) {
+			IObject endpoint = snapshot.getObject(endpointId);
+			ConnectorResult result = new ConnectorResult(endpointId, getName(endpoint));
+			result.port = toInt(port.resolve(endpoint), -1);
+			result.running = toBoolean(running.resolve(endpoint));
+			result.paused = toBoolean(paused.resolve(endpoint));
+			result.maxConnections = toInt(maxConnections.resolve(endpoint), -1);
+			result.connections = toInt(connectionCount.resolve(endpoint), -1);
+			result.acceptorState = getAcceptorState(snapshot, endpoint);
+			result.pollerState = getPollerState(snapshot, endpoint);
+
+			IObject pool = getThreadPool(endpoint);
+			if (pool != null) {
+				ownedExecutors.add(pool.getObjectId());
+				readThreadPool(pool, result);
+			}
+			results.add(result);
+		}
+
+		// Executors shared through <Executor> or not (yet) bound to an endpoint
+		for (int executorId : scan.getExecutors()) {
+			if (!ownedExecutors.contains(executorId)) {
+				IObject pool = snapshot.getObject(executorId);
+				ConnectorResult result = new ConnectorResult(executorId, "<executor> " + pool.getTechnicalName());
+				readThreadPool(pool, result);
+				results.add(result);
+			}
+		}
+
+		if (results.isEmpty()) {
+			return null;
+		}
+
+		int saturated = 0;
+		for (ConnectorResult result : results) {
+			if (result.getSaturation() != null) {
+				saturated++;
+			}
+		}
+
+		if (saturated == 0) {
+			return new InspectionResult(new ConnectorTable(results),
+					"Found " + results.size() + " connectors and thread pools, none saturated",
+					InspectionResultSeverity.INFO);
+		}
+		return new InspectionResult(new ConnectorTable(results),
+				"Found " + saturated + " saturated connectors or thread pools", InspectionResultSeverity.WARN);
+	}
+
+	private String getName(IObject endpoint) throws SnapshotException {
+		String value = name.resolveString(endpoint);
+		return value != null ? value : endpoint.getClazz().getName();
+	}
+
+	/**
+	 * @return the endpoint's thread pool, unwrapping a shared
+	 *         {@code StandardThreadExecutor}
+	 */
+	private IObject getThreadPool(IObject endpoint) throws SnapshotException {
+		Object value = executor.resolve(endpoint);
+		for (int i = 0; i < 2 && value instanceof IObject; i++) {
+			IObject object = (IObject) value;
+			if (object.getClazz().doesExtend(ConnectorScan.EXECUTOR_TYPE)
+					|| ConnectorScan.EXECUTOR_TYPE.equals(object.getClazz().getName())) {
+				return object;
+			}
+			value = executor.resolve(object);
+		}
+		return null;
+	}
+
+	private void readThreadPool(IObject pool, ConnectorResult result) throws SnapshotException {
+		int control = toInt(ctl.resolve(pool), 0);
+		result.poolSize = control & COUNT_MASK;
+		result.corePoolSize = toInt(corePoolSize.resolve(pool), -1);
+		result.maximumPoolSize = toInt(maximumPoolSize.resolve(pool), -1);
+		result.queueSize = toInt(queueSize.resolve(pool), 0);
+
+		// Submitted tasks are either queued or being worked on
+		int submitted = toInt(submittedCount.resolve(pool), -1);
+		result.activeCount = submitted < 0 ? -1 : Math.max(0, submitted - result.queueSize);
+	}
+
+	private String getAcceptorState(ISnapshot snapshot, IObject endpoint) throws SnapshotException {
+		Object value = acceptor.resolve(endpoint);
+		if (!(value instanceof IObject)) {
+			value = getFirstElement(snapshot, acceptors.resolve(endpoint));
+		}
+		return value instanceof IObject ? acceptorState.resolveString((IObject) value) : null;
+	}
+
+	private String getPollerState(ISnapshot snapshot, IObject endpoint) throws SnapshotException {
+		Object value = poller.resolve(endpoint);
+		if (!(value instanceof IObject)) {
+			value = getFirstElement(snapshot, pollers.resolve(endpoint));
+		}
+		if (!(value instanceof IObject)) {
+			return null;
+		}
+
+		Boolean closed = toBoolean(pollerClose.resolve((IObject) value));
+		return closed == null ? null : closed ? "CLOSED" : "RUNNING";
+	}
+
+	private static Object getFirstElement(ISnapshot snapshot, Object value) throws SnapshotException {
+		if (value instanceof IObjectArray) {
+			IObjectArray array = (IObjectArray) value;
+			for (long address : array.getReferenceArray(0, array.getLength())) {
+				if (address != 0) {
+					return snapshot.getObject(snapshot.mapAddressToId(address));
+				}
+			}
+		}
+		return null;
+	}
+
+	private static int toInt(Object value, int defaultValue) {
+		return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+	}
+
+	private static Boolean toBoolean(Object value) {
+		return value instanceof Boolean ? (Boolean) value : null;
+	}
+
+	public static class ConnectorResult {
+
+		private final int objectId;
+		private final String name;
+		private int port = -1;
+		private Boolean running;
+		private Boolean paused;
+		private String acceptorState;
+		private String pollerState;
+		private int connections = -1;
+		private int maxConnections = -1;
+		private int corePoolSize = -1;
+		private int maximumPoolSize = -1;
+		private int poolSize = -1;
+		private int activeCount = -1;
+		private int queueSize = -1;
+
+		public ConnectorResult(int objectId, String name) {
+			this.objectId = objectId;
+			this.name = name;
+		}
+
+		public int getObjectId() {
+			return objectId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the port, or -1 if unknown (or not an endpoint)
+		 */
+		public int getPort() {
+			return port;
+		}
+
+		public Boolean getRunning() {
+			return running;
+		}
+
+		public Boolean getPaused() {
+			return paused;
+		}
+
+		public String getAcceptorState() {
+			return acceptorState;
+		}
+
+		public String getPollerState() {
+			return pollerState;
+		}
+
+		public int getConnections() {
+			return connections;
+		}
+
+		/**
+		 * @return the connection limit, or -1 for none (or unknown)
+		 */
+		public int getMaxConnections() {
+			return maxConnections;
+		}
+
+		public int getCorePoolSize() {
+			return corePoolSize;
+		}
+
+		public int getMaximumPoolSize() {
+			return maximumPoolSize;
+		}
+
+		public int getPoolSize() {
+			return poolSize;
+		}
+
+		/**
+		 * @return the number of threads working on a task, or -1 if unknown
+		 */
+		public int getActiveCount() {
+			return activeCount;
+		}
+
+		public int getQueueSize() {
+			return queueSize;
+		}
+
+		/**
+		 * @return why the connector is saturated, or {@code null} if it is not
+		 */
+		public String getSaturation() {
+			List<String> reasons = new ArrayList<>();
+			if (maximumPoolSize > 0 && poolSize >= maximumPoolSize && activeCount >= maximumPoolSize) {
+				reasons.add("all threads busy");
+			}
+			if (queueSize > 0) {
+				reasons.add(queueSize + " tasks queued");
+			}
+			if (maxConnections > 0 && connections >= maxConnections) {
+				reasons.add("connection limit reached");
+			}
+			return reasons.isEmpty() ? null : String.join(", ", reasons);
+		}
+
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import org.eclipse.mat.collect.ArrayInt;
+
+import co.senn.eclipse.mat.inspection.IScanAggregate;
+import co.senn.eclipse.mat.inspection.ObjectScan;
+
+/**
+ * The object IDs of every connector endpoint ({@code NioEndpoint},
+ * {@code Nio2Endpoint}, ...) and Tomcat thread pool.
+ */
+public final class ConnectorScan implements IScanAggregate {
+
+	static final String ENDPOINT_TYPE = "org.apache.tomcat.util.net.AbstractEndpoint";
+	static final String EXECUTOR_TYPE = "org.apache.tomcat.util.threads.ThreadPoolExecutor";
+
+	private final ArrayInt endpoints = new ArrayInt();
+	private final ArrayInt executors = new ArrayInt();
+
+	@Override
+	public void subscribe(ObjectScan scan) {
+		scan.collect(ENDPOINT_TYPE, endpoints);
+		scan.collect(EXECUTOR_TYPE, executors);
+	}
+
+	int[] getEndpoints() {
+		return endpoints.toArray();
+	}
+
+	int[] getExecutors() {
+		return executors.toArray();
+	}
+
+}
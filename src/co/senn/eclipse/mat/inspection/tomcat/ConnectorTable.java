@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.ObjectSetContext;
+import co.senn.eclipse.mat.inspection.tomcat.ConnectorSaturationInspection.ConnectorResult;
+
+/**
+ * Connectors and thread pools, one row per endpoint or unowned pool. Unknown
+ * values are left empty.
+ */
+final class ConnectorTable implements IResultTable {
+
+	// @formatter:off
+	static final Column[] COLUMNS = {
+			new Column("Connector"),
+			new Column("Port", Integer.class).noTotals(),
+			new Column("Running", Boolean.class),
+			new Column("Paused", Boolean.class),
+			new Column("Acceptor"),
+			new Column("Poller"),
+			new Column("Connections", Integer.class),
+			new Column("Max Connections", Integer.class),
+			new Column("Core Threads", Integer.class),
+			new Column("Max Threads", Integer.class),
+			new Column("Threads", Integer.class),
+			new Column("Active Threads", Integer.class),
+			new Column("Queue Size", Integer.class),
+			new Column("Saturation")
+	};
+	// @formatter:on
+
+	private final List<ConnectorResult> rows;
+
+	ConnectorTable(List<ConnectorResult> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		ConnectorResult result = (ConnectorResult) row;
+		switch (columnIndex) {
+		case 0:
+			return result.getName();
+		case 1:
+			return known(result.getPort());
+		case 2:
+			return result.getRunning();
+		case 3:
+			return result.getPaused();
+		case 4:
+			return result.getAcceptorState();
+		case 5:
+			return result.getPollerState();
+		case 6:
+			return known(result.getConnections());
+		case 7:
+			return known(result.getMaxConnections());
+		case 8:
+			return known(result.getCorePoolSize());
+		case 9:
+			return known(result.getMaximumPoolSize());
+		case 10:
+			return known(result.getPoolSize());
+		case 11:
+			return known(result.getActiveCount());
+		case 12:
+			return known(result.getQueueSize());
+		case 13:
+			return result.getSaturation();
+		default:
+			return null;
+		}
+	}
+
+	private static Integer known(int value) {
+		return value < 0 ? null : value;
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return new ObjectSetContext(new int[] { ((ConnectorResult) row).getObjectId() });
+	}
+
+}
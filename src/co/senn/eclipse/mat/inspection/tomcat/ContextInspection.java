@@ -16,50 +16,30 @@
 package co.senn.eclipse.mat.inspection.tomcat;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
 
 import org.eclipse.mat.query.annotations.CommandName;
 import org.eclipse.mat.query.results.ListResult;
 import org.eclipse.mat.snapshot.ISnapshot;
-import org.eclipse.mat.snapshot.model.IObject;
 import org.eclipse.mat.util.IProgressListener;
 
+import co.senn.eclipse.mat.inspection.AbstractInspection;
 import co.senn.eclipse.mat.inspection.InspectionResult;
-import co.senn.eclipse.mat.inspection.api.IInspection;
-import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+import co.senn.eclipse.mat.inspection.SharedScan;
 import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
-import co.senn.eclipse.mat.inspection.util.InspectionUtil;
+import co.senn.eclipse.mat.inspection.tomcat.WebappClassLoaderScan.Loader;
 
 @CommandName("suspect:servlet-container-contexts")
-public class ContextInspection implements IInspection {
+public class ContextInspection extends AbstractInspection {
 
-	@Override
-	public IInspectionResult execute(ISnapshot snapshot, IProgressListener listener) throws Exception {
-		Collection<IObject> contexts = InspectionUtil.getObjects("org.apache.catalina.loader.WebappClassLoader", true,
-				snapshot);
+	static final String NO_NAME = "<no name>";
 
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
 		List<ContextResult> results = new ArrayList<>();
-		for (IObject context : contexts) {
-			String state = "Unknown";
-			getState: {
-				// Older Tomcat Versions
-				Object started = context.resolveValue("started");
-				if (started != null) {
-					state = Objects.equals(started, true) ? "Started" : "Stopped";
-					break getState;
-				}
-
-				// Newer Tomcat Versions
-				Object stateName = context.resolveValue("state.name");
-				if (stateName != null) {
-					state = String.valueOf(stateName);
-					break getState;
-				}
-			}
-
-			results.add(new ContextResult("<no name>", state));
+		for (Loader context : SharedScan.get(snapshot, WebappClassLoaderScan.class, listener).getLoaders()) {
+			String name = context.getName();
+			results.add(new ContextResult(name == null ? NO_NAME : name, context.getState()));
 		}
 
 		if (results.size() == 0) {
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.Objects;
+
+/**
+ * The host, method and URI an HTTP request is grouped by.
+ */
+final class HTTPRequestKey implements Comparable<HTTPRequestKey> {
+
+	private final String host;
+	private final String method;
+	private final String uri;
+	private final int hash;
+
+	HTTPRequestKey(String host, String method, String uri) {
+		this.host = Objects.requireNonNull(host);
+		this.method = Objects.requireNonNull(method);
+		this.uri = Objects.requireNonNull(uri);
+		this.hash = (host.hashCode() * 31 + method.hashCode()) * 31 + uri.hashCode();
+	}
+
+	String getHost() {
+		return host;
+	}
+
+	String getMethod() {
+		return method;
+	}
+
+	String getUri() {
+		return uri;
+	}
+
+	@Override
+	public int compareTo(HTTPRequestKey other) {
+		int result = host.compareTo(other.host);
+		if (result == 0) {
+			result = method.compareTo(other.method);
+		}
+		if (result == 0) {
+			result = uri.compareTo(other.uri);
+		}
+		return result;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof HTTPRequestKey)) {
+			return false;
+		}
+
+		HTTPRequestKey other = (HTTPRequestKey) obj;
+		return hash == other.hash && host.equals(other.host) && method.equals(other.method) && uri.equals(other.uri);
+	}
+
+}
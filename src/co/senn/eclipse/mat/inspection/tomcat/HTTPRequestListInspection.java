@@ -16,125 +16,158 @@
 package co.senn.eclipse.mat.inspection.tomcat;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.query.Column;
 import org.eclipse.mat.query.annotations.CommandName;
-import org.eclipse.mat.query.results.ListResult;
 import org.eclipse.mat.snapshot.ISnapshot;
 import org.eclipse.mat.snapshot.model.IObject;
 import org.eclipse.mat.util.IProgressListener;
 
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
 import co.senn.eclipse.mat.inspection.InspectionResult;
-import co.senn.eclipse.mat.inspection.api.IInspection;
-import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.RetainedHeap;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.TopGroups;
+import co.senn.eclipse.mat.inspection.TopGroups.Group;
 import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
-import co.senn.eclipse.mat.inspection.util.InspectionUtil;
-import co.senn.eclipse.mat.inspection.util.PrimitiveValueUtil;
+import co.senn.eclipse.mat.inspection.export.ITabular;
 
 @CommandName("http:requests-tomcat")
-public final class HTTPRequestListInspection implements IInspection {
+public final class HTTPRequestListInspection extends AbstractInspection implements ITabular {
 
-	@Override
-	public IInspectionResult execute(ISnapshot snapshot, IProgressListener listener) throws Exception {
-		Collection<IObject> requests = InspectionUtil.getObjects("org.apache.coyote.Request", true, snapshot);
-
-		List<TomcatHTTPRequestQueryResult> results = new ArrayList<>();
-		for (IObject request : requests) {
-			// @formatter:off
-			results.add(new TomcatHTTPRequestQueryResult(
-					parseMessageBytes(request, "serverNameMB"),
-					parseMessageBytes(request, "methodMB"),
-					parseMessageBytes(request, "uriMB"),
-					request.getUsedHeapSize(),
-					request.getRetainedHeapSize()
-			));
-			// @formatter:on
-		}
-
-		if (requests.size() == 0) {
-			return null;
-		}
+	private static final int SHALLOW_HEAP = 0;
 
-		List<TomcatMergedHTTPRequestQueryResult> mergedResults = merge(results);
-		Collections.sort(mergedResults, (r1, r2) -> r2.getCount() - r1.getCount());
+	/**
+	 * Orders groups by descending count, then by key, so that the order does
+	 * not depend on how the requests were partitioned.
+	 */
+	private static final Comparator<Group<HTTPRequestKey>> ORDER = Comparator
+			.comparingInt((Group<HTTPRequestKey> g) -> g.getCount()).reversed().thenComparing(Group::getKey);
 
-		return new InspectionResult(
-				new ListResult(TomcatMergedHTTPRequestQueryResult.class, mergedResults, "host", "method", "uri",
-						"shallowHeap", "retainedHeap", "count"),
-				"Found " + results.size() + " HTTP requests", InspectionResultSeverity.INFO);
+	@Override
+	public Column[] getColumns() {
+		return HTTPRequestTable.COLUMNS;
 	}
 
-	private String parseMessageBytes(IObject request, String field) throws SnapshotException {
-		IObject messageBytes = (IObject) request.resolveValue(field);
-		if (messageBytes == null) {
-			return "null";
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		if (!PackageIndex.get(snapshot).hasInstances("org.apache.coyote")) {
+			return null;
 		}
 
-		// Try "byteChunk"
-		IObject byteChunk = (IObject) messageBytes.resolveValue("byteC");
-		if (byteChunk == null) {
-			return "null";
+		int[] requests = SharedScan.get(snapshot, HTTPRequestScan.class, listener).getRequests();
+		if (requests.length == 0) {
+			return null;
 		}
 
-		boolean byteChunkSet = (boolean) byteChunk.resolveValue("isSet");
-		if (byteChunkSet) {
-			byte[] bytes = PrimitiveValueUtil.getByteArray(byteChunk, "buff");
-			int start = (int) byteChunk.resolveValue("start");
-			int end = (int) byteChunk.resolveValue("end");
-
-			return new String(bytes, start, end - start);
+		List<TomcatMergedHTTPRequestQueryResult> mergedResults = top(snapshot, requests,
+				InspectionSettings.getMaxRows(), listener);
+
+		// Retained heap forces a dominator tree lookup per object, so it is only
+		// computed up front for the groups at the top of the table, if at all.
+		// The others can be calculated on demand from each row's context.
+		int retained = InspectionSettings.isRequestRetainedHeap()
+				? Math.min(mergedResults.size(), InspectionSettings.getRetainedHeapRows())
+				: 0;
+		for (int i = 0; i < retained; i++) {
+			TomcatMergedHTTPRequestQueryResult result = mergedResults.get(i);
+			long retainedHeap = estimateRetainedHeap(snapshot, result, listener);
+			if (retainedHeap < 0) {
+				break;
+			}
+			result.setRetainedHeap(retainedHeap);
 		}
 
-		// Try "charChunk"
-		IObject charChunk = (IObject) messageBytes.resolveValue("charC");
-		if (charChunk == null) {
-			return "null";
-		}
+		return new InspectionResult(new HTTPRequestTable(mergedResults),
+				"Found " + requests.length + " HTTP requests", InspectionResultSeverity.INFO);
+	}
 
-		boolean charChunkSet = (boolean) charChunk.resolveValue("isSet");
-		if (charChunkSet) {
-			char[] chars = PrimitiveValueUtil.getCharArray(charChunk, "buff");
-			int start = (int) charChunk.resolveValue("start");
-			int end = (int) charChunk.resolveValue("end");
+	/**
+	 * @return the retained heap of the group's requests, estimated from a
+	 *         sample of them, or {@code -1} if the budget ran out
+	 * @see RetainedHeap#estimate(ISnapshot, int[], int, IProgressListener)
+	 */
+	static long estimateRetainedHeap(ISnapshot snapshot, TomcatMergedHTTPRequestQueryResult result,
+			IProgressListener listener) throws SnapshotException {
+		return RetainedHeap.estimate(snapshot, result.getObjectIds(), result.getCount(), listener);
+	}
 
-			return new String(chars, start, end - start);
+	/**
+	 * Groups the requests, then reads them again for every request of the
+	 * groups reported, as their context, unless the first pass kept them all
+	 * already. Rows keep a sample of their requests if the second pass runs
+	 * out of time.
+	 *
+	 * @see #toResults(TopGroups, int)
+	 */
+	static List<TomcatMergedHTTPRequestQueryResult> top(ISnapshot snapshot, int[] requests, int limit,
+			IProgressListener listener) throws SnapshotException {
+		TopGroups<HTTPRequestKey> groups = group(snapshot, requests, () -> new TopGroups<>(1), listener);
+		if (!groups.isComplete(limit)) {
+			Set<HTTPRequestKey> keys = groups.topKeys(limit, ORDER);
+			TopGroups<HTTPRequestKey> all = group(snapshot, requests, () -> new TopGroups<>(1, keys), listener);
+			if (!InspectionBudget.checkpoint(listener)) {
+				groups = all;
+			}
 		}
-
-		return "null";
+		return toResults(groups, limit);
 	}
 
-	private List<TomcatMergedHTTPRequestQueryResult> merge(Collection<TomcatHTTPRequestQueryResult> results) {
-		Map<String, List<TomcatHTTPRequestQueryResult>> result = results.stream()
-				.collect(Collectors.groupingBy(r -> r.getHost() + r.getMethod() + r.getUri()));
-
-		// @formatter:off
-		List<TomcatMergedHTTPRequestQueryResult> mergedResults = new ArrayList<>();
-		result.forEach((id, res) -> {
-			long shallowHeapTotal = 0;
-			long retainedHeapTotal = 0;
-			for (TomcatHTTPRequestQueryResult request : res) {
-				shallowHeapTotal += request.getShallowHeap();
-				retainedHeapTotal += request.getRetainedHeap();
-			}
+	/**
+	 * Decodes and groups the requests by {@link HTTPRequestKey}, in parallel.
+	 */
+	static TopGroups<HTTPRequestKey> group(ISnapshot snapshot, int[] requests,
+			Supplier<TopGroups<HTTPRequestKey>> partials, IProgressListener listener) throws SnapshotException {
+		FieldPath serverName = FieldPath.compile("serverNameMB");
+		FieldPath method = FieldPath.compile("methodMB");
+		FieldPath uri = FieldPath.compile("uriMB");
+
+		// Every partition reuses one decoder, and its buffers, for all of its requests
+		return ParallelScan.reduce(requests, partials, MessageBytesDecoder::new,
+				(partial, decoder, requestId) -> {
+			IObject request = snapshot.getObject(requestId);
+			// @formatter:off
+			HTTPRequestKey key = new HTTPRequestKey(
+					decoder.decode(request, serverName),
+					decoder.decode(request, method),
+					decoder.decode(request, uri)
+			);
+			// @formatter:on
+			partial.add(key, requestId).add(SHALLOW_HEAP, request.getUsedHeapSize());
+		}, TopGroups::merge, listener);
+	}
 
-			TomcatHTTPRequestQueryResult first = res.get(0);
-			mergedResults.add(new TomcatMergedHTTPRequestQueryResult(
-					first.getHost(),
-					first.getMethod(),
-					first.getUri(),
-					shallowHeapTotal,
-					retainedHeapTotal,
-					res.size()
+	/**
+	 * @return the {@code limit} largest groups in order, followed by a single
+	 *         {@value TopGroups#OTHER} row for all remaining groups (if any)
+	 */
+	static List<TomcatMergedHTTPRequestQueryResult> toResults(TopGroups<HTTPRequestKey> groups, int limit) {
+		List<Group<HTTPRequestKey>> top = groups.top(limit, ORDER, new HTTPRequestKey(TopGroups.OTHER, "", ""));
+		List<TomcatMergedHTTPRequestQueryResult> results = new ArrayList<>(top.size());
+		for (Group<HTTPRequestKey> group : top) {
+			// @formatter:off
+			results.add(new TomcatMergedHTTPRequestQueryResult(
+					group.getKey().getHost(),
+					group.getKey().getMethod(),
+					group.getKey().getUri(),
+					group.getSum(SHALLOW_HEAP),
+					null,
+					group.getCount(),
+					group.getObjectIds()
 			));
-		});
-		// @formatter:on
-
-		return mergedResults;
+			// @formatter:on
+		}
+		return results;
 	}
 
 	public static class TomcatHTTPRequestQueryResult {
@@ -143,10 +176,10 @@ public final class HTTPRequestListInspection implements IInspection {
 		private final String method;
 		private final String uri;
 		private final long shallowHeap;
-		private final long retainedHeap;
+		private Long retainedHeap;
 
 		public TomcatHTTPRequestQueryResult(String host, String method, String uri, long shallowHeap,
-				long retainedHeap) {
+				Long retainedHeap) {
 			this.host = host;
 			this.method = method;
 			this.uri = uri;
@@ -170,26 +203,43 @@ public final class HTTPRequestListInspection implements IInspection {
 			return shallowHeap;
 		}
 
-		public long getRetainedHeap() {
+		/**
+		 * @return the retained heap, or {@code null} if it has not been computed
+		 */
+		public Long getRetainedHeap() {
 			return retainedHeap;
 		}
 
+		void setRetainedHeap(long retainedHeap) {
+			this.retainedHeap = retainedHeap;
+		}
+
 	}
 
 	public static class TomcatMergedHTTPRequestQueryResult extends TomcatHTTPRequestQueryResult {
 
 		public final int count;
+		private final int[] objectIds;
 
 		public TomcatMergedHTTPRequestQueryResult(String host, String method, String uri, long shallowHeap,
-				long retainedHeap, int count) {
+				Long retainedHeap, int count, int[] objectIds) {
 			super(host, method, uri, shallowHeap, retainedHeap);
 			this.count = count;
+			this.objectIds = objectIds;
 		}
 
 		public int getCount() {
 			return count;
 		}
 
+		/**
+		 * @return the object IDs of the group's requests, or of a sample of them
+		 *         if there are more than {@link InspectionSettings#getSampleSize()}
+		 */
+		public int[] getObjectIds() {
+			return objectIds;
+		}
+
 	}
 
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.ObjectSetContext;
+import co.senn.eclipse.mat.inspection.tomcat.HTTPRequestListInspection.TomcatMergedHTTPRequestQueryResult;
+
+/**
+ * Merged HTTP requests, one row per host, method and URI.
+ * <p>
+ * Every row carries the object IDs of its requests as its context (a sample
+ * of them only if the second pass ran out of time), so the retained heap of
+ * rows that were not computed up front can be calculated from the UI when
+ * needed. Retained heap computed up front is estimated from a sample.
+ */
+final class HTTPRequestTable implements IResultTable {
+
+	// @formatter:off
+	static final Column[] COLUMNS = {
+			new Column("Host"),
+			new Column("Method"),
+			new Column("URI"),
+			new Column("Shallow Heap", Long.class),
+			new Column("Retained Heap (est.)", Long.class).noTotals(),
+			new Column("Count", Integer.class).sorting(Column.SortDirection.DESC)
+	};
+	// @formatter:on
+
+	private final List<TomcatMergedHTTPRequestQueryResult> rows;
+
+	HTTPRequestTable(List<TomcatMergedHTTPRequestQueryResult> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		TomcatMergedHTTPRequestQueryResult result = (TomcatMergedHTTPRequestQueryResult) row;
+		switch (columnIndex) {
+		case 0:
+			return result.getHost();
+		case 1:
+			return result.getMethod();
+		case 2:
+			return result.getUri();
+		case 3:
+			return result.getShallowHeap();
+		case 4:
+			return result.getRetainedHeap();
+		case 5:
+			return result.getCount();
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return new ObjectSetContext(((TomcatMergedHTTPRequestQueryResult) row).getObjectIds());
+	}
+
+}
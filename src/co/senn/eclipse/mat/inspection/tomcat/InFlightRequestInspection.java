@@ -0,0 +1,301 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.annotations.CommandName;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.InspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.ParallelScan;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.TopGroups;
+import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+
+/**
+ * Reports the HTTP requests that were being processed when the dump was
+ * taken, with an age histogram per host, method and URI.
+ * <p>
+ * Tomcat recycles its {@code Request} objects, so most of them are idle. A
+ * request is in flight when its {@code startTime} is set and its processing
+ * stage (if known) is neither keep-alive nor ended. Ages are measured against
+ * the dump's creation date, or against the newest request if the dump does
+ * not record one.
+ */
+@CommandName("http:requests-in-flight-tomcat")
+public final class InFlightRequestInspection extends AbstractInspection implements ITabular {
+
+	// org.apache.coyote.Constants
+	// @formatter:off
+	private static final String[] STAGES = {
+			"NEW", "PARSE", "PREPARE", "SERVICE", "ENDINPUT", "ENDOUTPUT", "KEEPALIVE", "ENDED"
+	};
+	// @formatter:on
+	private static final int STAGE_KEEPALIVE = 6;
+	private static final int STAGE_ENDED = 7;
+
+	/**
+	 * Upper bounds (exclusive) of the age histogram buckets, in milliseconds;
+	 * the last bucket is open-ended.
+	 */
+	static final long[] BUCKETS = { 1_000, 10_000, 60_000 };
+
+	private static final int SLOWEST_IN_SUMMARY = 3;
+
+	@Override
+	public Column[] getColumns() {
+		return InFlightRequestTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		if (!PackageIndex.get(snapshot).hasInstances("org.apache.coyote")) {
+			return null;
+		}
+
+		int[] requests = SharedScan.get(snapshot, HTTPRequestScan.class, listener).getRequests();
+		if (requests.length == 0) {
+			return null;
+		}
+
+		List<InFlightRequest> inFlight = find(snapshot, requests, listener);
+		if (inFlight.isEmpty()) {
+			return null;
+		}
+
+		Date created = snapshot.getSnapshotInfo().getCreationDate();
+		long dumpTime = created != null ? created.getTime() : Long.MIN_VALUE;
+		if (created == null) {
+			for (InFlightRequest request : inFlight) {
+				dumpTime = Math.max(dumpTime, request.startTime);
+			}
+		}
+		for (InFlightRequest request : inFlight) {
+			request.age = Math.max(0, dumpTime - request.startTime);
+		}
+		Collections.sort(inFlight, Comparator.comparingLong((InFlightRequest r) -> r.age).reversed()
+				.thenComparingInt(r -> r.objectId));
+
+		StringBuilder summary = new StringBuilder();
+		summary.append("Found ").append(inFlight.size()).append(" HTTP requests in flight");
+		if (created == null) {
+			summary.append(" (ages relative to the newest request)");
+		}
+		summary.append("; slowest: ");
+		for (int i = 0; i < Math.min(SLOWEST_IN_SUMMARY, inFlight.size()); i++) {
+			InFlightRequest request = inFlight.get(i);
+			if (i > 0) {
+				summary.append(", ");
+			}
+			summary.append(String.format("%s %s (%,d ms, %s)", request.key.getMethod(), request.key.getUri(),
+					request.age, request.stage));
+		}
+
+		return new InspectionResult(new InFlightRequestTable(group(inFlight, InspectionSettings.getMaxRows())),
+				summary.toString(), InspectionResultSeverity.INFO);
+	}
+
+	/**
+	 * Decodes the requests that are in flight, in parallel.
+	 */
+	private static List<InFlightRequest> find(ISnapshot snapshot, int[] requests, IProgressListener listener)
+			throws SnapshotException {
+		FieldPath startTime = FieldPath.compile("startTime");
+		FieldPath stage = FieldPath.compile("reqProcessorMX.stage");
+		FieldPath serverName = FieldPath.compile("serverNameMB");
+		FieldPath method = FieldPath.compile("methodMB");
+		FieldPath uri = FieldPath.compile("uriMB");
+
+		return ParallelScan.reduce(requests, ArrayList<InFlightRequest>::new, MessageBytesDecoder::new,
+				(partial, decoder, requestId) -> {
+			IObject request = snapshot.getObject(requestId);
+
+			// Recycled requests have a start time of -1 (or 0 before Tomcat 8.5)
+			Object start = startTime.resolve(request);
+			if (!(start instanceof Long) || (Long) start <= 0) {
+				return;
+			}
+
+			Object value = stage.resolve(request);
+			int stageValue = value instanceof Integer ? (Integer) value : -1;
+			if (stageValue == STAGE_KEEPALIVE || stageValue == STAGE_ENDED) {
+				return;
+			}
+
+			// @formatter:off
+			HTTPRequestKey key = new HTTPRequestKey(
+					decoder.decode(request, serverName),
+					decoder.decode(request, method),
+					decoder.decode(request, uri)
+			);
+			// @formatter:on
+			partial.add(new InFlightRequest(requestId, key, (Long) start, getStageName(stageValue)));
+		}, (left, right) -> {
+			left.addAll(right);
+			return left;
+		}, listener);
+	}
+
+	private static String getStageName(int stage) {
+		return stage >= 0 && stage < STAGES.length ? STAGES[stage] : "UNKNOWN";
+	}
+
+	/**
+	 * Groups requests sorted by descending age, keeping that order, and folds
+	 * the groups beyond {@code limit} into a single {@value TopGroups#OTHER}
+	 * row.
+	 */
+	private static List<InFlightRequestGroup> group(List<InFlightRequest> inFlight, int limit) {
+		Map<HTTPRequestKey, InFlightRequestGroup> groups = new HashMap<>();
+		List<InFlightRequestGroup> results = new ArrayList<>();
+		InFlightRequestGroup other = new InFlightRequestGroup(TopGroups.OTHER, "", "");
+		for (InFlightRequest request : inFlight) {
+			InFlightRequestGroup group = groups.get(request.key);
+			if (group == null) {
+				if (results.size() < limit) {
+					group = new InFlightRequestGroup(request.key.getHost(), request.key.getMethod(),
+							request.key.getUri());
+					results.add(group);
+				} else {
+					group = other;
+				}
+				groups.put(request.key, group);
+			}
+			group.add(request);
+		}
+
+		if (other.getCount() > 0) {
+			results.add(other);
+		}
+		return results;
+	}
+
+	private static final class InFlightRequest {
+
+		private final int objectId;
+		private final HTTPRequestKey key;
+		private final long startTime;
+		private final String stage;
+		private long age;
+
+		InFlightRequest(int objectId, HTTPRequestKey key, long startTime, String stage) {
+			this.objectId = objectId;
+			this.key = key;
+			this.startTime = startTime;
+			this.stage = stage;
+		}
+
+	}
+
+	public static class InFlightRequestGroup {
+
+		private final String host;
+		private final String method;
+		private final String uri;
+		private final int[] histogram = new int[BUCKETS.length + 1];
+		private final Map<String, Integer> stages = new TreeMap<>();
+		private final List<Integer> objectIds = new ArrayList<>();
+		private long oldestAge = -1;
+
+		public InFlightRequestGroup(String host, String method, String uri) {
+			this.host = host;
+			this.method = method;
+			this.uri = uri;
+		}
+
+		private void add(InFlightRequest request) {
+			int bucket = 0;
+			while (bucket < BUCKETS.length && request.age >= BUCKETS[bucket]) {
+				bucket++;
+			}
+			histogram[bucket]++;
+			stages.merge(request.stage, 1, Integer::sum);
+			objectIds.add(request.objectId);
+			oldestAge = Math.max(oldestAge, request.age);
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public String getUri() {
+			return uri;
+		}
+
+		public int getCount() {
+			return objectIds.size();
+		}
+
+		/**
+		 * @return the number of requests per age bucket, see {@link #BUCKETS}
+		 */
+		public int[] getHistogram() {
+			return histogram.clone();
+		}
+
+		/**
+		 * @return the age of the oldest request, in milliseconds
+		 */
+		public long getOldestAge() {
+			return oldestAge;
+		}
+
+		/**
+		 * @return the number of requests per processing stage (eg:
+		 *         {@code SERVICE: 3, PARSE: 1})
+		 */
+		public String getStages() {
+			StringBuilder builder = new StringBuilder();
+			stages.forEach((stage, count) -> {
+				if (builder.length() > 0) {
+					builder.append(", ");
+				}
+				builder.append(stage).append(": ").append(count);
+			});
+			return builder.toString();
+		}
+
+		/**
+		 * @return the object IDs of the requests, oldest first
+		 */
+		public int[] getObjectIds() {
+			return objectIds.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+	}
+
+}
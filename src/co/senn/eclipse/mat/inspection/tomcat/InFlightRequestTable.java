@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.List;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.ObjectSetContext;
+import co.senn.eclipse.mat.inspection.tomcat.InFlightRequestInspection.InFlightRequestGroup;
+
+/**
+ * In-flight HTTP requests, one row per host, method and URI, with the number
+ * of requests per age bucket. Rows are ordered by their oldest request, and
+ * each row's context lists its requests oldest first.
+ */
+final class InFlightRequestTable implements IResultTable {
+
+	// @formatter:off
+	static final Column[] COLUMNS = {
+			new Column("Host"),
+			new Column("Method"),
+			new Column("URI"),
+			new Column("Count", Integer.class),
+			new Column("< 1 s", Integer.class),
+			new Column("1-10 s", Integer.class),
+			new Column("10-60 s", Integer.class),
+			new Column(">= 60 s", Integer.class),
+			new Column("Oldest (ms)", Long.class).sorting(Column.SortDirection.DESC).noTotals(),
+			new Column("Stages")
+	};
+	// @formatter:on
+
+	private final List<InFlightRequestGroup> rows;
+
+	InFlightRequestTable(List<InFlightRequestGroup> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		InFlightRequestGroup result = (InFlightRequestGroup) row;
+		switch (columnIndex) {
+		case 0:
+			return result.getHost();
+		case 1:
+			return result.getMethod();
+		case 2:
+			return result.getUri();
+		case 3:
+			return result.getCount();
+		case 4:
+		case 5:
+		case 6:
+		case 7:
+			return result.getHistogram()[columnIndex - 4];
+		case 8:
+			return result.getOldestAge();
+		case 9:
+			return result.getStages();
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public IContextObject getContext(Object row) {
+		return new ObjectSetContext(((InFlightRequestGroup) row).getObjectIds());
+	}
+
+}
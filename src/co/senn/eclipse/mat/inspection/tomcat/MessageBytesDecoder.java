@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.HashMapLongObject;
+import org.eclipse.mat.snapshot.model.IObject;
+
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.PrimitiveArrays;
+
+/**
+ * Decodes Tomcat {@code MessageBytes} fields.
+ * <p>
+ * Only the {@code start..end} slice of the chunk buffer is read from the
+ * dump. Slices are cached by buffer object ID and offsets, since many
+ * {@code MessageBytes} of a request share one buffer, and decoded values are
+ * interned so that repeated hosts and methods are held once.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class MessageBytesDecoder {
+
+	private static final String NULL = "null";
+	private static final int CACHE_SIZE = 16 * 1024;
+
+	private final FieldPath byteChunk = FieldPath.compile("byteC");
+	private final FieldPath charChunk = FieldPath.compile("charC");
+	private final FieldPath isSet = FieldPath.compile("isSet");
+	private final FieldPath buff = FieldPath.compile("buff");
+	private final FieldPath start = FieldPath.compile("start");
+	private final FieldPath end = FieldPath.compile("end");
+
+	private final HashMapLongObject<Slice> slices = new HashMapLongObject<>();
+	private final Map<String, String> values = new HashMap<>();
+
+	public String decode(IObject object, FieldPath field) throws SnapshotException {
+		Object messageBytes = field.resolve(object);
+		if (!(messageBytes instanceof IObject)) {
+			return NULL;
+		}
+
+		// Try "byteChunk"
+		String value = decodeChunk(byteChunk.resolve((IObject) messageBytes));
+		if (value != null) {
+			return value;
+		}
+
+		// Try "charChunk"
+		value = decodeChunk(charChunk.resolve((IObject) messageBytes));
+		if (value != null) {
+			return value;
+		}
+
+		return NULL;
+	}
+
+	/**
+	 * @return the decoded chunk, or {@code null} if it is absent or not set
+	 */
+	private String decodeChunk(Object value) throws SnapshotException {
+		if (!(value instanceof IObject)) {
+			return null;
+		}
+
+		IObject chunk = (IObject) value;
+		if (!Boolean.TRUE.equals(isSet.resolve(chunk))) {
+			return null;
+		}
+
+		Object buffer = buff.resolve(chunk);
+		Object startValue = start.resolve(chunk);
+		Object endValue = end.resolve(chunk);
+		if (!(buffer instanceof IObject) || !(startValue instanceof Integer) || !(endValue instanceof Integer)) {
+			return null;
+		}
+
+		return decodeSlice((IObject) buffer, (Integer) startValue, (Integer) endValue);
+	}
+
+	private String decodeSlice(IObject buffer, int from, int to) throws SnapshotException {
+		long key = ((long) buffer.getObjectId() << 32) | (from & 0xFFFFFFFFL);
+		Slice slice = slices.get(key);
+		if (slice != null && slice.end == to) {
+			return slice.value;
+		}
+
+		String value;
+		byte[] bytes = PrimitiveArrays.getBytes(buffer, from, to);
+		if (bytes != null) {
+			value = new String(bytes);
+		} else {
+			char[] chars = PrimitiveArrays.getChars(buffer, from, to);
+			if (chars == null) {
+				return null;
+			}
+			value = new String(chars);
+		}
+
+		// Bound memory on dumps with many distinct values
+		if (slices.size() >= CACHE_SIZE) {
+			slices.clear();
+		}
+		if (values.size() >= CACHE_SIZE) {
+			values.clear();
+		}
+
+		String interned = values.putIfAbsent(value, value);
+		if (interned != null) {
+			value = interned;
+		}
+		slices.put(key, new Slice(to, value));
+
+		return value;
+	}
+
+	private static final class Slice {
+
+		private final int end;
+		private final String value;
+
+		Slice(int end, String value) {
+			this.end = end;
+			this.value = value;
+		}
+
+	}
+
+}
@@ -16,66 +16,152 @@
 package co.senn.eclipse.mat.inspection.tomcat;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Objects;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.mat.query.Column;
 import org.eclipse.mat.query.annotations.CommandName;
-import org.eclipse.mat.query.results.TextResult;
 import org.eclipse.mat.snapshot.ISnapshot;
-import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.IClass;
 import org.eclipse.mat.util.IProgressListener;
 
+import co.senn.eclipse.mat.inspection.AbstractInspection;
+import co.senn.eclipse.mat.inspection.GCRootPaths;
+import co.senn.eclipse.mat.inspection.InspectionBudget;
 import co.senn.eclipse.mat.inspection.InspectionResult;
-import co.senn.eclipse.mat.inspection.api.IInspection;
-import co.senn.eclipse.mat.inspection.api.IInspectionResult;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.SharedScan;
 import co.senn.eclipse.mat.inspection.api.InspectionResultSeverity;
-import co.senn.eclipse.mat.inspection.util.InspectionUtil;
+import co.senn.eclipse.mat.inspection.export.ITabular;
+import co.senn.eclipse.mat.inspection.tomcat.WebappClassLoaderScan.Loader;
 
 /**
  * Checks for non-started Tomcat web application contexts.
  * <p>
  * The presence of these can be indicative of a memory leak (eg: uninterruptible
- * threads).
+ * threads). Each one is reported with the heap it retains and, for the
+ * largest, the shortest strong path from a GC root that keeps it alive.
  * 
  * @author Andy Senn
  */
 @CommandName("suspect:servlet-container-non-started-contexts")
-public final class NonStartedContextInspection implements IInspection {
+public final class NonStartedContextInspection extends AbstractInspection implements ITabular {
 
 	@Override
-	public IInspectionResult execute(ISnapshot snapshot, IProgressListener listener) throws Exception {
-		Collection<IObject> nonStartedClassLoaders = new ArrayList<>();
-		boolean found = InspectionUtil.forEachObjectOfType("org.apache.catalina.loader.WebappClassLoader", true, snapshot, object -> {
+	public Column[] getColumns() {
+		return LeakedContextTable.COLUMNS;
+	}
+
+	@Override
+	protected InspectionResult inspect(ISnapshot snapshot, IProgressListener listener) throws Exception {
+		if (!PackageIndex.get(snapshot).hasInstances("org.apache.catalina.loader")) {
+			return null;
+		}
+
+		List<Loader> nonStartedClassLoaders = new ArrayList<>();
+		for (Loader loader : SharedScan.get(snapshot, WebappClassLoaderScan.class, listener).getLoaders()) {
 
 			// Older Tomcat Versions
-			Object started = object.resolveValue("started");
-			if (started != null && Objects.equals(started, false)) {
-				nonStartedClassLoaders.add(object);
-				return; // Instead of nesting if/else blocks
+			if (Boolean.FALSE.equals(loader.getStarted())) {
+				nonStartedClassLoaders.add(loader);
+				continue; // Instead of nesting if/else blocks
 			}
 
 			// Newer Tomcat Versions
-			Object state = object.resolveValue("state.name");
-			if (state != null && Objects.equals(state, "DESTROYED")) {
-				nonStartedClassLoaders.add(object);
-				return; // Instead of nesting if/else blocks
+			if ("DESTROYED".equals(loader.getStateName())) {
+				nonStartedClassLoaders.add(loader);
+				continue; // Instead of nesting if/else blocks
 			}
 
 			// Any other things to check here?
-		});
+		}
 
-		if (!found || nonStartedClassLoaders.size() == 0) {
+		if (nonStartedClassLoaders.isEmpty()) {
 			return null;
 		}
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("Found ").append(nonStartedClassLoaders.size())
-				.append(" non-started context(s), which may be indicitive of a memory leak:\n");
-		nonStartedClassLoaders.forEach(object -> sb.append("\n").append(object));
+		// Loaders of redeployed contexts often pin the same objects, so the
+		// total is computed over all of them at once rather than summed
+		int[] loaderIds = new int[nonStartedClassLoaders.size()];
+		for (int i = 0; i < loaderIds.length; i++) {
+			loaderIds[i] = nonStartedClassLoaders.get(i).getObjectId();
+		}
+		long totalRetainedHeap = snapshot.getHeapSize(snapshot.getRetainedSet(loaderIds, listener));
+
+		// Once the budget runs out, the remaining contexts are listed without
+		// their retained heap
+		List<LeakedContext> contexts = new ArrayList<>(nonStartedClassLoaders.size());
+		boolean exhausted = false;
+		for (Loader loader : nonStartedClassLoaders) {
+			exhausted = exhausted || InspectionBudget.checkpoint(listener);
+			String name = loader.getName();
+			contexts.add(new LeakedContext(loader.getObjectId(), name == null ? ContextInspection.NO_NAME : name,
+					loader.getState(), exhausted ? null : snapshot.getRetainedHeapSize(loader.getObjectId())));
+		}
+		contexts.sort(Comparator.comparing(LeakedContext::getRetainedHeap,
+				Comparator.nullsLast(Comparator.<Long> reverseOrder())));
 
-		return new InspectionResult(new TextResult(sb.toString()),
-				"Found " + nonStartedClassLoaders.size() + " non-started application contexts",
+		// Each path search walks the inbound references, so only the largest
+		// contexts get one
+		Map<IClass, Set<String>> excludes = GCRootPaths.strongReferencesOnly(snapshot);
+		int paths = Math.min(contexts.size(), InspectionSettings.getGCRootPathRows());
+		for (int i = 0; i < paths && !InspectionBudget.checkpoint(listener); i++) {
+			LeakedContext context = contexts.get(i);
+			context.pathFromGCRoots = GCRootPaths.getShortestPath(snapshot, context.objectId, excludes);
+		}
+
+		return new InspectionResult(new LeakedContextTable(contexts),
+				"Found " + contexts.size() + " non-started application contexts retaining "
+						+ String.format("%,d", totalRetainedHeap) + " bytes",
 				InspectionResultSeverity.WARN);
 	}
 
+	public static class LeakedContext {
+
+		private final int objectId;
+		private final String name;
+		private final String state;
+		private final Long retainedHeap;
+		private String pathFromGCRoots;
+
+		public LeakedContext(int objectId, String name, String state, Long retainedHeap) {
+			this.objectId = objectId;
+			this.name = name;
+			this.state = state;
+			this.retainedHeap = retainedHeap;
+		}
+
+		public int getObjectId() {
+			return objectId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		/**
+		 * @return the retained heap, or {@code null} if the budget ran out
+		 *         before it was computed
+		 */
+		public Long getRetainedHeap() {
+			return retainedHeap;
+		}
+
+		/**
+		 * @return the shortest strong path from a GC root, or {@code null} if it
+		 *         was not searched
+		 */
+		public String getPathFromGCRoots() {
+			return pathFromGCRoots;
+		}
+
+	}
+
 }
@@ -18,13 +18,21 @@ package co.senn.eclipse.mat.inspection.tomcat;
 import org.eclipse.mat.SnapshotException;
 import org.eclipse.mat.snapshot.ISnapshot;
 
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.SharedScan;
 import co.senn.eclipse.mat.inspection.api.ITechnology;
 
 public final class Tomcat implements ITechnology {
 
+	static {
+		SharedScan.register(HTTPRequestScan.class, HTTPRequestScan::new);
+		SharedScan.register(WebappClassLoaderScan.class, WebappClassLoaderScan::new);
+		SharedScan.register(ConnectorScan.class, ConnectorScan::new);
+	}
+
 	@Override
 	public boolean isPresent(ISnapshot snapshot) throws SnapshotException {
-		return ITechnology.isPackagePresent(snapshot, "org.apache.tomcat");
+		return PackageIndex.get(snapshot).isPresent("org.apache.tomcat");
 	}
 
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.mat.query.IQuery;
+import org.eclipse.mat.query.IResult;
+import org.eclipse.mat.query.annotations.Argument;
+import org.eclipse.mat.query.annotations.Category;
+import org.eclipse.mat.query.annotations.CommandName;
+import org.eclipse.mat.query.annotations.Help;
+import org.eclipse.mat.query.annotations.Name;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.util.IProgressListener;
+
+/**
+ * Compares the HTTP requests and web application contexts of a series of
+ * dumps, oldest first, reporting how their count and retained heap grew.
+ * <p>
+ * Each dump is reduced once to a {@link TomcatSummary} kept next to its index
+ * files; baselines that already have one are not opened at all.
+ */
+@CommandName("tomcat_diff")
+@Name("Tomcat Requests and Contexts Growth")
+@Category("Inspections")
+@Help("Compares the HTTP requests and web application contexts of earlier dumps (the baselines, oldest first) "
+		+ "with this snapshot and reports their growth in count and retained heap.")
+public class TomcatDiffQuery implements IQuery {
+
+	@Argument
+	public ISnapshot snapshot;
+
+	@Argument(flag = "baseline")
+	@Help("The earlier heap dumps, oldest first.")
+	public File[] baselines;
+
+	@Override
+	public IResult execute(IProgressListener listener) throws Exception {
+		List<String> names = new ArrayList<>();
+		List<TomcatSummary> summaries = new ArrayList<>();
+		for (File baseline : baselines) {
+			listener.subTask("Summarizing " + baseline.getName());
+			names.add(baseline.getName());
+			summaries.add(summarize(baseline, listener));
+		}
+
+		listener.subTask("Summarizing " + new File(snapshot.getSnapshotInfo().getPath()).getName());
+		names.add(new File(snapshot.getSnapshotInfo().getPath()).getName());
+		summaries.add(TomcatSummary.get(snapshot, listener));
+
+		return new TomcatDiffTable(names, summaries);
+	}
+
+	private static TomcatSummary summarize(File dump, IProgressListener listener) throws Exception {
+		TomcatSummary summary = TomcatSummary.load(dump);
+		if (summary != null) {
+			return summary;
+		}
+
+		ISnapshot baseline = SnapshotFactory.openSnapshot(dump, Collections.emptyMap(), listener);
+		try {
+			return TomcatSummary.get(baseline, listener);
+		} finally {
+			SnapshotFactory.dispose(baseline);
+		}
+	}
+
+}
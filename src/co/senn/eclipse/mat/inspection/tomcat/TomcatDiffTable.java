@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import org.eclipse.mat.query.Column;
+import org.eclipse.mat.query.IContextObject;
+import org.eclipse.mat.query.IResultTable;
+import org.eclipse.mat.query.ResultMetaData;
+
+import co.senn.eclipse.mat.inspection.tomcat.TomcatSummary.Entry;
+
+/**
+ * Growth of requests and contexts across dumps: one row per request group or
+ * context, with its count in every dump and its growth from the first to the
+ * last. The retained heap of request groups is estimated from a sample of
+ * their requests.
+ */
+final class TomcatDiffTable implements IResultTable {
+
+	private final Column[] columns;
+	private final List<Row> rows = new ArrayList<>();
+
+	TomcatDiffTable(List<String> dumps, List<TomcatSummary> summaries) {
+		int n = dumps.size();
+		columns = new Column[n + 5];
+		columns[0] = new Column("Type");
+		columns[1] = new Column("Key");
+		for (int i = 0; i < n; i++) {
+			columns[i + 2] = new Column("Count (" + dumps.get(i) + ")", Integer.class);
+		}
+		columns[n + 2] = new Column("Count Growth", Integer.class);
+		columns[n + 3] = new Column("Retained Heap (est.)", Long.class).noTotals();
+		columns[n + 4] = new Column("Retained Heap Growth (est.)", Long.class).sorting(Column.SortDirection.DESC);
+
+		addRows("Request", summaries, s -> s.requests, k -> k.getMethod() + ' ' + k.getHost() + k.getUri());
+		addRows("Context", summaries, s -> s.contexts, k -> k);
+	}
+
+	private <K extends Comparable<K>> void addRows(String type, List<TomcatSummary> summaries,
+			Function<TomcatSummary, Map<K, Entry>> entries, Function<K, String> label) {
+		TreeSet<K> keys = new TreeSet<>();
+		for (TomcatSummary summary : summaries) {
+			keys.addAll(entries.apply(summary).keySet());
+		}
+
+		for (K key : keys) {
+			Row row = new Row(type, label.apply(key), summaries.size());
+			for (int i = 0; i < summaries.size(); i++) {
+				Entry entry = entries.apply(summaries.get(i)).get(key);
+				if (entry != null) {
+					row.counts[i] = entry.count;
+					row.retainedHeap[i] = entry.retainedHeap;
+				}
+			}
+			rows.add(row);
+		}
+	}
+
+	@Override
+	public ResultMetaData getResultMetaData() {
+		return null;
+	}
+
+	@Override
+	public Column[] getColumns() {
+		return columns;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getRow(int rowId) {
+		return rows.get(rowId);
+	}
+
+	@Override
+	public Object getColumnValue(Object row, int columnIndex) {
+		Row r = (Row) row;
+		int n = r.counts.length;
+		if (columnIndex == 0) {
+			return r.type;
+		} else if (columnIndex == 1) {
+			return r.key;
+		} else if (columnIndex < n + 2) {
+			return r.counts[columnIndex - 2];
+		} else if (columnIndex == n + 2) {
+			return r.counts[n - 1] - r.counts[0];
+		} else if (columnIndex == n + 3) {
+			return r.retainedHeap[n - 1] < 0 ? null : r.retainedHeap[n - 1];
+		} else if (columnIndex == n + 4) {
+			// Unknown if either dump was summarized without request retained heap
+			return r.retainedHeap[n - 1] < 0 || r.retainedHeap[0] < 0 ? null
+					: r.retainedHeap[n - 1] - r.retainedHeap[0];
+		}
+		return null;
+	}
+
+	/**
+	 * Rows summarize several dumps, so there are no objects to act on.
+	 */
+	@Override
+	public IContextObject getContext(Object row) {
+		return null;
+	}
+
+	private static final class Row {
+
+		private final String type;
+		private final String key;
+		private final int[] counts;
+		private final long[] retainedHeap;
+
+		Row(String type, String key, int dumps) {
+			this.type = type;
+			this.key = key;
+			this.counts = new int[dumps];
+			this.retainedHeap = new long[dumps];
+		}
+
+	}
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.util.IProgressListener;
+
+import co.senn.eclipse.mat.inspection.InspectionBudget;
+import co.senn.eclipse.mat.inspection.InspectionSettings;
+import co.senn.eclipse.mat.inspection.PackageIndex;
+import co.senn.eclipse.mat.inspection.SharedScan;
+import co.senn.eclipse.mat.inspection.SnapshotFiles;
+import co.senn.eclipse.mat.inspection.tomcat.HTTPRequestListInspection.TomcatMergedHTTPRequestQueryResult;
+import co.senn.eclipse.mat.inspection.tomcat.WebappClassLoaderScan.Loader;
+
+/**
+ * The requests and contexts of a snapshot reduced to counts and retained heap
+ * per group, small enough to keep on disk next to the dump's index files
+ * ({@code <dump>.inspection.tomcat.summary}) and compare across a series of
+ * dumps without opening them again.
+ *
+ * @see TomcatDiffQuery
+ */
+final class TomcatSummary {
+
+	private static final String FILE = "inspection.tomcat.summary";
+	private static final int MAGIC = 0x4D415454; // MATT
+	private static final int FORMAT = 2;
+
+	private static final Map<ISnapshot, TomcatSummary> SUMMARIES = new WeakHashMap<>();
+
+	/**
+	 * Request groups by host, method and URI.
+	 */
+	final Map<HTTPRequestKey, Entry> requests = new TreeMap<>();
+
+	/**
+	 * Contexts by "name [state]".
+	 */
+	final Map<String, Entry> contexts = new TreeMap<>();
+
+	/**
+	 * Whether every group was summarized in full, ie: the budget did not run
+	 * out and request retained heap was computed. Partial summaries are not
+	 * kept.
+	 */
+	private boolean complete = true;
+
+	static final class Entry {
+
+		int count;
+
+		/**
+		 * The retained heap, or -1 if it was not computed
+		 */
+		long retainedHeap;
+
+	}
+
+	/**
+	 * @return the summary of an open snapshot, read from disk if it was kept
+	 *         by an earlier run and computed (and kept) otherwise
+	 */
+	static TomcatSummary get(ISnapshot snapshot, IProgressListener listener) throws SnapshotException {
+		synchronized (SUMMARIES) {
+			TomcatSummary summary = SUMMARIES.get(snapshot);
+			if (summary != null) {
+				return summary;
+			}
+		}
+
+		File dump = new File(snapshot.getSnapshotInfo().getPath());
+		TomcatSummary summary = load(dump);
+		if (summary == null) {
+			summary = compute(snapshot, listener);
+			if (!summary.complete) {
+				return summary;
+			}
+			summary.store(dump);
+		}
+
+		synchronized (SUMMARIES) {
+			SUMMARIES.put(snapshot, summary);
+		}
+		return summary;
+	}
+
+	/**
+	 * @return the summary kept for a dump, or {@code null} if there is none or
+	 *         it is out of date
+	 */
+	static TomcatSummary load(File dump) {
+		File file = new File(SnapshotFiles.getPrefix(dump) + FILE);
+		if (SnapshotFiles.getPluginVersion() == null || !file.isFile()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(
+				new InflaterInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT || !SnapshotFiles.getKey(dump).equals(in.readUTF())) {
+				return null;
+			}
+
+			TomcatSummary summary = new TomcatSummary();
+			readRequests(in, summary.requests);
+			read(in, summary.contexts);
+			return summary;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static TomcatSummary compute(ISnapshot snapshot, IProgressListener listener) throws SnapshotException {
+		TomcatSummary summary = new TomcatSummary();
+		PackageIndex packages = PackageIndex.get(snapshot);
+
+		if (packages.hasInstances("org.apache.coyote")) {
+			int[] requests = SharedScan.get(snapshot, HTTPRequestScan.class, listener).getRequests();
+			List<TomcatMergedHTTPRequestQueryResult> groups = HTTPRequestListInspection.top(snapshot, requests,
+					Integer.MAX_VALUE, listener);
+			boolean retained = InspectionSettings.isRequestRetainedHeap();
+			summary.complete = retained;
+			for (TomcatMergedHTTPRequestQueryResult group : groups) {
+				Entry entry = new Entry();
+				entry.count = group.getCount();
+				entry.retainedHeap = retained
+						? HTTPRequestListInspection.estimateRetainedHeap(snapshot, group, listener)
+						: -1;
+				if (retained && entry.retainedHeap < 0) {
+					summary.complete = false;
+					return summary;
+				}
+				summary.requests.put(new HTTPRequestKey(group.getHost(), group.getMethod(), group.getUri()), entry);
+			}
+		}
+
+		if (packages.hasInstances("org.apache.catalina.loader")) {
+			for (Loader loader : SharedScan.get(snapshot, WebappClassLoaderScan.class, listener).getLoaders()) {
+				if (InspectionBudget.checkpoint(listener)) {
+					summary.complete = false;
+					return summary;
+				}
+
+				String name = loader.getName() == null ? ContextInspection.NO_NAME : loader.getName();
+				Entry entry = summary.contexts.computeIfAbsent(name + " [" + loader.getState() + "]", k -> new Entry());
+				entry.count++;
+				entry.retainedHeap += snapshot.getRetainedHeapSize(loader.getObjectId());
+			}
+		}
+
+		return summary;
+	}
+
+	private void store(File dump) {
+		if (SnapshotFiles.getPluginVersion() == null) {
+			return;
+		}
+
+		File file = new File(SnapshotFiles.getPrefix(dump) + FILE);
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()))))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				out.writeUTF(SnapshotFiles.getKey(dump));
+				writeRequests(out, requests);
+				write(out, contexts);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			// Best effort, the summary is computed again next time
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Request keys are written field by field, so that no host, method or URI
+	 * can be mistaken for another.
+	 */
+	private static void writeRequests(DataOutputStream out, Map<HTTPRequestKey, Entry> entries)
+			throws IOException {
+		out.writeInt(entries.size());
+		for (Map.Entry<HTTPRequestKey, Entry> entry : entries.entrySet()) {
+			out.writeUTF(entry.getKey().getHost());
+			out.writeUTF(entry.getKey().getMethod());
+			out.writeUTF(entry.getKey().getUri());
+			write(out, entry.getValue());
+		}
+	}
+
+	private static void readRequests(DataInputStream in, Map<HTTPRequestKey, Entry> entries) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			HTTPRequestKey key = new HTTPRequestKey(in.readUTF(), in.readUTF(), in.readUTF());
+			entries.put(key, read(in));
+		}
+	}
+
+	private static void write(DataOutputStream out, Map<String, Entry> entries) throws IOException {
+		out.writeInt(entries.size());
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			out.writeUTF(entry.getKey());
+			write(out, entry.getValue());
+		}
+	}
+
+	private static void read(DataInputStream in, Map<String, Entry> entries) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			String key = in.readUTF();
+			entries.put(key, read(in));
+		}
+	}
+
+	private static void write(DataOutputStream out, Entry entry) throws IOException {
+		out.writeInt(entry.count);
+		out.writeLong(entry.retainedHeap);
+	}
+
+	private static Entry read(DataInputStream in) throws IOException {
+		Entry entry = new Entry();
+		entry.count = in.readInt();
+		entry.retainedHeap = in.readLong();
+		return entry;
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Andy Senn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.senn.eclipse.mat.inspection.tomcat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.mat.snapshot.model.IObject;
+
+import co.senn.eclipse.mat.inspection.FieldPath;
+import co.senn.eclipse.mat.inspection.IObjectVisitor;
+import co.senn.eclipse.mat.inspection.IScanAggregate;
+import co.senn.eclipse.mat.inspection.ObjectScan;
+
+/**
+ * The lifecycle state and context name of every web application class loader
+ * ({@code WebappClassLoader}, and {@code ParallelWebappClassLoader} through
+ * their common base class on newer Tomcat versions), shared by
+ * {@link ContextInspection} and {@link NonStartedContextInspection}.
+ */
+public final class WebappClassLoaderScan implements IScanAggregate {
+
+	static final String TYPE = "org.apache.catalina.loader.WebappClassLoader";
+	static final String BASE_TYPE = "org.apache.catalina.loader.WebappClassLoaderBase";
+
+	// Each Tomcat version has one or the other
+	private final FieldPath started = FieldPath.optional("started");
+	private final FieldPath stateName = FieldPath.optional("state.name");
+	private final FieldPath contextName = FieldPath.firstOf("contextName", "resources.context.name",
+			"resources.context.path");
+
+	private final List<Loader> loaders = new ArrayList<>();
+
+	@Override
+	public void subscribe(ObjectScan scan) {
+		// The same visitor for both types, so that each loader is visited once
+		IObjectVisitor visitor = object -> {
+			// Older Tomcat Versions
+			Object isStarted = started.resolve(object);
+
+			// @formatter:off
+			loaders.add(new Loader(
+					object.getObjectId(),
+					isStarted instanceof Boolean ? (Boolean) isStarted : null,
+					stateName.resolveString(object), // Newer Tomcat Versions
+					contextName.resolveString(object)
+			));
+			// @formatter:on
+		};
+		scan.register(TYPE, visitor);
+		scan.register(BASE_TYPE, visitor);
+	}
+
+	List<Loader> getLoaders() {
+		return loaders;
+	}
+
+	static final class Loader {
+
+		private final int objectId;
+		private final Boolean started;
+		private final String stateName;
+		private final String name;
+
+		Loader(int objectId, Boolean started, String stateName, String name) {
+			this.objectId = objectId;
+			this.started = started;
+			this.stateName = stateName;
+			this.name = name;
+		}
+
+		int getObjectId() {
+			return objectId;
+		}
+
+		/**
+		 * @return the {@code started} flag of older Tomcat versions, or
+		 *         {@code null} if absent
+		 */
+		Boolean getStarted() {
+			return started;
+		}
+
+		/**
+		 * @return the {@code LifecycleState} name of newer Tomcat versions, or
+		 *         {@code null} if absent
+		 */
+		String getStateName() {
+			return stateName;
+		}
+
+		/**
+		 * @return the name of the context the loader belongs to, or
+		 *         {@code null} if unknown
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * @return a display state for either Tomcat version: "Started",
+		 *         "Stopped", the {@code LifecycleState} name or "Unknown"
+		 */
+		String getState() {
+			// Older Tomcat Versions
+			if (started != null) {
+				return started ? "Started" : "Stopped";
+			}
+
+			// Newer Tomcat Versions
+			if (stateName != null) {
+				return stateName;
+			}
+
+			return "Unknown";
+		}
+
+	}
+
+}